@@ -0,0 +1,92 @@
+package fr.volkaert.event_broker.benchmarks;
+
+import fr.volkaert.event_broker.catalog_client.CatalogClient;
+import fr.volkaert.event_broker.model.EventType;
+import fr.volkaert.event_broker.model.Subscription;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Lookups served by the cache of the CatalogClient (the Catalog itself is never called once the cache is warm),
+// measured under contention since every publishing/delivering thread does several lookups per event
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class CatalogClientCacheBenchmark {
+
+    AnnotationConfigApplicationContext context;
+    CatalogClient catalogClient;
+
+    @Setup
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Collections.singletonMap("broker.catalog-url", "http://catalog")));
+        context.register(FakeCatalogConfig.class, CatalogClient.class);
+        context.refresh();
+        catalogClient = context.getBean(CatalogClient.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public EventType getEventType() {
+        return catalogClient.getEventType("Benchmark-EVT");
+    }
+
+    @Benchmark
+    public Subscription getSubscription() {
+        return catalogClient.getSubscription("Benchmark-SUB");
+    }
+
+    @Configuration
+    public static class FakeCatalogConfig {
+
+        @Bean
+        public CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager();
+        }
+
+        // Answers as the Catalog would (only called on a cache miss)
+        @Bean
+        @Qualifier("RestTemplateForCatalogClient")
+        public RestTemplate restTemplateForCatalogClient() {
+            return new RestTemplate() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <T> ResponseEntity<T> getForEntity(String url, Class<T> responseType, Object... uriVariables) {
+                    String code = url.substring(url.lastIndexOf('/') + 1);
+                    if (responseType == EventType.class) {
+                        EventType eventType = new EventType();
+                        eventType.setCode(code);
+                        eventType.setActive(true);
+                        return new ResponseEntity<>((T) eventType, HttpStatus.OK);
+                    }
+                    Subscription subscription = new Subscription();
+                    subscription.setCode(code);
+                    subscription.setEventTypeCode("Benchmark-EVT");
+                    subscription.setActive(true);
+                    return new ResponseEntity<>((T) subscription, HttpStatus.OK);
+                }
+            };
+        }
+    }
+}
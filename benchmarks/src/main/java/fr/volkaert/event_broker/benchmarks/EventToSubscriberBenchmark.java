@@ -0,0 +1,43 @@
+package fr.volkaert.event_broker.benchmarks;
+
+import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.standard_subscription_adapter.model.EventToSubscriber;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventToSubscriberBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    PayloadProfile payloadProfile;
+
+    InflightEvent inflightEvent;
+    EventToSubscriber eventToSubscriber;
+
+    @Setup
+    public void setup() {
+        inflightEvent = payloadProfile.newInflightEvent();
+        eventToSubscriber = EventToSubscriber.from(inflightEvent);
+    }
+
+    @Benchmark
+    public EventToSubscriber eventToSubscriberFrom() {
+        return EventToSubscriber.from(inflightEvent);
+    }
+
+    @Benchmark
+    public EventToSubscriber eventToSubscriberCloneWithoutSensitiveData() {
+        return eventToSubscriber.cloneWithoutSensitiveData();
+    }
+
+    @Benchmark
+    public InflightEvent inflightEventCloneWithoutSensitiveData() {
+        return inflightEvent.cloneWithoutSensitiveData();
+    }
+}
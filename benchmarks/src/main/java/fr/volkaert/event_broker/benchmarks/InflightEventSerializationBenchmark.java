@@ -0,0 +1,69 @@
+package fr.volkaert.event_broker.benchmarks;
+
+import fr.volkaert.event_broker.encoding.InflightEventCodecs;
+import fr.volkaert.event_broker.model.InflightEvent;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.schema.SchemaDefinition;
+import org.apache.pulsar.client.internal.DefaultImplementation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Encoding/decoding of an InflightEvent in a Pulsar message with the topic encodings (the "json" codec is also used for the
+// DLQ topics). The Pulsar JSON schema, no more used by the broker, is kept as the baseline of the former encoding.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InflightEventSerializationBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    PayloadProfile payloadProfile;
+
+    Schema<InflightEvent> pulsarJsonSchema;
+    InflightEvent event;
+    byte[] pulsarJsonSchemaBytes;
+    byte[] jsonBytes;
+    byte[] binaryBytes;
+
+    @Setup
+    public void setup() {
+        pulsarJsonSchema = DefaultImplementation.newJSONSchema(SchemaDefinition.builder().withJSR310ConversionEnabled(true).withPojo(InflightEvent.class).build());
+        event = payloadProfile.newInflightEvent();
+        pulsarJsonSchemaBytes = pulsarJsonSchema.encode(event);
+        jsonBytes = InflightEventCodecs.JSON.encode(event);
+        binaryBytes = InflightEventCodecs.BINARY.encode(event);
+    }
+
+    @Benchmark
+    public byte[] pulsarJsonSchemaEncode() {
+        return pulsarJsonSchema.encode(event);
+    }
+
+    @Benchmark
+    public InflightEvent pulsarJsonSchemaDecode() {
+        return pulsarJsonSchema.decode(pulsarJsonSchemaBytes);
+    }
+
+    @Benchmark
+    public byte[] jsonCodecEncode() {
+        return InflightEventCodecs.JSON.encode(event);
+    }
+
+    @Benchmark
+    public InflightEvent jsonCodecDecode() {
+        return InflightEventCodecs.JSON.decode(jsonBytes);
+    }
+
+    @Benchmark
+    public byte[] binaryCodecEncode() {
+        return InflightEventCodecs.BINARY.encode(event);
+    }
+
+    @Benchmark
+    public InflightEvent binaryCodecDecode() {
+        return InflightEventCodecs.BINARY.decode(binaryBytes);
+    }
+}
@@ -0,0 +1,55 @@
+package fr.volkaert.event_broker.benchmarks;
+
+import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.util.RawJsonPayload;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Payload sizes used by the benchmarks (the size is approximative)
+public enum PayloadProfile {
+
+    SMALL(1),       // ~ 200 bytes
+    MEDIUM(60),     // ~ 10 KB
+    LARGE(900);     // ~ 150 KB
+
+    private final int itemCount;
+
+    PayloadProfile(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public String payloadAsJson() {
+        StringBuilder sb = new StringBuilder("{\"message\":\"Benchmark\",\"timeToSleepInMillis\":0,\"items\":[");
+        for (int i = 0; i < itemCount; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"index\":").append(i)
+                    .append(",\"reference\":\"").append(UUID.randomUUID()).append('"')
+                    .append(",\"amount\":").append(i * 1.25)
+                    .append(",\"label\":\"Some label with accents \u00e9\u00e0\u00e8 for item ").append(i).append('"')
+                    .append(",\"active\":").append(i % 2 == 0).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    // An event as read by the Subscription Manager, once the subscription attributes have been filled
+    public InflightEvent newInflightEvent() {
+        InflightEvent event = new InflightEvent();
+        event.setBusinessId(UUID.randomUUID().toString());
+        event.setEventTypeCode("Benchmark-EVT");
+        event.setPublicationCode("Benchmark-PUB");
+        event.setSubscriptionCode("Benchmark-SUB");
+        event.setPayload(new RawJsonPayload(payloadAsJson()));
+        event.setTimeToLiveInSeconds(30L);
+        event.setChannel("benchmark");
+        event.setId(UUID.randomUUID().toString());
+        event.setCreationDate(Instant.now());
+        event.setExpirationDate(Instant.now().plusSeconds(30));
+        event.setSecret("some-secret");
+        event.setWebhookUrl("http://localhost:8099/tests/subscriber1/nominal");
+        event.setWebhookHeaders("header1 : value1 ; header2 : value2 ; header3 : value3");
+        event.setAuthClientId("some-client-id-for-webhook");
+        event.setAuthClientSecret("some-client-secret-for-webhook");
+        return event;
+    }
+}
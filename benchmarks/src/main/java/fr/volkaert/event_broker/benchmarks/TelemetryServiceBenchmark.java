@@ -0,0 +1,64 @@
+package fr.volkaert.event_broker.benchmarks;
+
+import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// TelemetryService is called several times per event by every publishing/delivering thread, so it is measured under
+// contention (16 threads) on a few event types
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class TelemetryServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedTelemetryService {
+        TelemetryService telemetryService;
+
+        @Setup
+        public void setup() throws Exception {
+            telemetryService = new TelemetryService();
+            Field meterRegistryField = TelemetryService.class.getDeclaredField("meterRegistry");
+            meterRegistryField.setAccessible(true);
+            meterRegistryField.set(telemetryService, (MeterRegistry) new SimpleMeterRegistry());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadEvent {
+        InflightEvent event;
+
+        @Setup
+        public void setup() {
+            event = PayloadProfile.SMALL.newInflightEvent();
+            int eventTypeIndex = (int) (Thread.currentThread().getId() % 4);
+            event.setEventTypeCode("Benchmark" + eventTypeIndex + "-EVT");
+            event.setPublicationCode("Benchmark" + eventTypeIndex + "-PUB");
+        }
+    }
+
+    @Benchmark
+    public String publicationLifecycle(SharedTelemetryService shared, ThreadEvent threadEvent) {
+        Instant publicationStart = Instant.now();
+        shared.telemetryService.eventPublicationRequested(threadEvent.event);
+        shared.telemetryService.eventPublicationAttempted(threadEvent.event);
+        return shared.telemetryService.eventPublicationSucceeded(threadEvent.event, publicationStart);
+    }
+
+    @Benchmark
+    public String deliveryLifecycle(SharedTelemetryService shared, ThreadEvent threadEvent) {
+        Instant deliveryStart = Instant.now();
+        shared.telemetryService.eventDeliveryRequested(threadEvent.event);
+        shared.telemetryService.eventDeliveryAttempted(threadEvent.event);
+        return shared.telemetryService.eventDeliverySucceeded(threadEvent.event, deliveryStart);
+    }
+}
@@ -0,0 +1,37 @@
+package fr.volkaert.event_broker.benchmarks;
+
+import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.standard_subscription_adapter.SubscriptionAdapterService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+// Parsing of the webhook headers of a subscription, done by the Subscription Adapter each time the webhook request
+// template of a subscription is compiled (see WebhookRequestTemplate)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebhookHeadersBenchmark {
+
+    @Param({"", "header1:value1", "header1 : value1 ; header2 : value2 ; header3 : value3 ; header4 : value4"})
+    String webhookHeaders;
+
+    InflightEvent event;
+
+    @Setup
+    public void setup() {
+        event = PayloadProfile.SMALL.newInflightEvent();
+        event.setWebhookHeaders(webhookHeaders);
+    }
+
+    @Benchmark
+    public HttpHeaders setWebhookHeaders() {
+        HttpHeaders httpHeaders = new HttpHeaders();
+        SubscriptionAdapterService.setWebhookHeaders(httpHeaders, event);
+        return httpHeaders;
+    }
+}
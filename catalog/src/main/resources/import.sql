@@ -2,10 +2,11 @@ INSERT INTO event_type (code, name, active) VALUES ('NominalTest-EVT', 'NominalT
 INSERT INTO event_type (code, name, active) VALUES ('Failure401Test-EVT', 'Failure401Test-EVT', true)
 INSERT INTO event_type (code, name, active) VALUES ('Failure500Test-EVT', 'Failure500Test-EVT', true)
 INSERT INTO event_type (code, name, active) VALUES ('SlowTest-EVT', 'SlowTest-EVT', true)
-INSERT INTO event_type (code, name, active) VALUES ('ComplexPayloadTest-EVT', 'ComplexPayloadTest-EVT', true)
+INSERT INTO event_type (code, name, active, producer_batching_max_publish_delay_in_millis, producer_compression_type) VALUES ('ComplexPayloadTest-EVT', 'ComplexPayloadTest-EVT', true, 10, 'lz4')
 INSERT INTO event_type (code, name, active) VALUES ('ComplexPayload2Test-EVT', 'ComplexPayload2Test-EVT', true)
 INSERT INTO event_type (code, name, active) VALUES ('TimeToLiveTest-EVT', 'TimeToLiveTest-EVT', true)
 INSERT INTO event_type (code, name, active) VALUES ('OAuth2Test-EVT', 'OAuth2Test-EVT', true)
+INSERT INTO event_type (code, name, active) VALUES ('BatchTest-EVT', 'BatchTest-EVT', true)
 
 INSERT INTO publication (code, name, event_type_code, active) VALUES ('NominalTest-PUB', 'NominalTest-PUB', 'NominalTest-EVT', true)
 INSERT INTO publication (code, name, event_type_code, active) VALUES ('Failure401Test-PUB', 'Failure401Test-PUB', 'Failure401Test-EVT', true)
@@ -15,6 +16,7 @@ INSERT INTO publication (code, name, event_type_code, active) VALUES ('ComplexPa
 INSERT INTO publication (code, name, event_type_code, active) VALUES ('ComplexPayload2Test-PUB', 'ComplexPayload2Test-PUB', 'ComplexPayload2Test-EVT', true)
 INSERT INTO publication (code, name, event_type_code, active) VALUES ('TimeToLiveTest-PUB', 'TimeToLiveTest-PUB', 'TimeToLiveTest-EVT', true)
 INSERT INTO publication (code, name, event_type_code, active) VALUES ('OAuth2Test-PUB', 'OAuth2Test-PUB', 'OAuth2Test-EVT', true)
+INSERT INTO publication (code, name, event_type_code, active) VALUES ('BatchTest-PUB', 'BatchTest-PUB', 'BatchTest-EVT', true)
 
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, webhook_headers, auth_client_id, auth_client_secret, secret) VALUES ('NominalTest-SUB1', 'NominalTest-SUB1', 'NominalTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/nominal', 'application/json', 'header1:value1', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, webhook_headers, auth_client_id, auth_client_secret, secret) VALUES ('NominalTest-SUB2', 'NominalTest-SUB2', 'NominalTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/nominal', 'application/json', 'header1 : value1 ; header2 : value2', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
@@ -23,7 +25,7 @@ INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret) VALUES ('Failure500Test-SUB1-Ok', 'Failure500Test-SUB1-Ok', 'Failure500Test-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/nominal', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret) VALUES ('Failure500Test-SUB2-Failure500', 'Failure500Test-SUB2-Failure500', 'Failure500Test-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/failure500', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret) VALUES ('SlowTest-SUB1-Ok', 'SlowTest-SUB1-Ok', 'SlowTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/nominal', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
-INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret) VALUES ('SlowTest-SUB2-Slow', 'SlowTest-SUB2-Slow', 'SlowTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/slow', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
+INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret, delivery_concurrency, delivery_ordered_by_business_id) VALUES ('SlowTest-SUB2-Slow', 'SlowTest-SUB2-Slow', 'SlowTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/slow', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL, 10, true)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret) VALUES ('ComplexPayloadTest-SUB1', 'ComplexPayloadTest-SUB1', 'ComplexPayloadTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/complex-payload', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret) VALUES ('ComplexPayload2Test-SUB1', 'ComplexPayload2Test-SUB1', 'ComplexPayload2Test-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/complex-payload2', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret) VALUES ('TimeToLiveTest-SUB-Ok', 'TimeToLiveTest-SUB-Ok', 'TimeToLiveTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/nominal', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL)
@@ -33,3 +35,4 @@ INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret, time_to_live_in_seconds_for_webhook_server5xx_error) VALUES ('TimeToLiveTest-SUB-Failure500', 'TimeToLiveTest-SUB-Failure500', 'TimeToLiveTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/failure500', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL, 30)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret, time_to_live_in_seconds_for_webhook_client4xx_error) VALUES ('TimeToLiveTest-SUB-Failure401', 'TimeToLiveTest-SUB-Failure401', 'TimeToLiveTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/failure401', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL, 30)
 INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, webhook_headers, auth_method, auth_scope, secret) VALUES ('OAuth2Test-SUB', 'OAuth2Test-SUB', 'OAuth2Test-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/nominal', 'application/json', 'header1:value1', 'oauth2', 'test_subscriber_oauth2.webhooks', NULL)
+INSERT INTO subscription (code, name, event_type_code, active, channel, webhook_url, webhook_content_type, auth_client_id, auth_client_secret, secret, delivery_batch_max_size, delivery_batch_max_bytes, delivery_batch_max_linger_in_millis) VALUES ('BatchTest-SUB', 'BatchTest-SUB', 'BatchTest-EVT', true, NULL, 'http://localhost:8099/tests/subscriber1/batch', 'application/json', 'some-client-id-for-webhook', 'some-client-secret-for-webhook', NULL, 100, 1048576, 500)
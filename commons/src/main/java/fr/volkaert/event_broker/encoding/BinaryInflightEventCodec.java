@@ -0,0 +1,119 @@
+package fr.volkaert.event_broker.encoding;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.util.RawJsonPayload;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Compact encoding: no field names, dates as epoch millis, payload as raw JSON (UTF-8).
+// Only the attributes known at publication time are encoded (the attributes related to a subscription are filled
+// by the Subscription Manager after the message has been read).
+//
+// Layout: MAGIC, VERSION, then in this order businessId, eventTypeCode, publicationCode, channel, id (strings),
+// creationDate, expirationDate (epoch millis), timeToLiveInSeconds (long), payload (string).
+// A string is an int length (-1 for null) followed by the UTF-8 bytes, a nullable long is a presence byte followed by
+// the long.
+public class BinaryInflightEventCodec implements InflightEventCodec {
+
+    public static final String NAME = "binary";
+
+    // Never the first byte of a JSON document, so the encoding can also be detected without the message property
+    public static final byte MAGIC = (byte) 0xB1;
+    private static final byte VERSION = 1;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(InflightEvent event) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, event.getBusinessId());
+            writeString(out, event.getEventTypeCode());
+            writeString(out, event.getPublicationCode());
+            writeString(out, event.getChannel());
+            writeString(out, event.getId());
+            writeLong(out, event.getCreationDate() != null ? event.getCreationDate().toEpochMilli() : null);
+            writeLong(out, event.getExpirationDate() != null ? event.getExpirationDate().toEpochMilli() : null);
+            writeLong(out, event.getTimeToLiveInSeconds());
+            writeString(out, payloadToJson(event.getPayload()));
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Error while encoding the event " + event.toShortLog() + " in binary", ex);
+        }
+    }
+
+    @Override
+    public InflightEvent decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readByte() != MAGIC) {
+                throw new IllegalArgumentException("Not a binary event (invalid magic byte)");
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported version " + version + " of binary event");
+            }
+            InflightEvent event = new InflightEvent();
+            event.setBusinessId(readString(in));
+            event.setEventTypeCode(readString(in));
+            event.setPublicationCode(readString(in));
+            event.setChannel(readString(in));
+            event.setId(readString(in));
+            Long creationDate = readLong(in);
+            event.setCreationDate(creationDate != null ? Instant.ofEpochMilli(creationDate) : null);
+            Long expirationDate = readLong(in);
+            event.setExpirationDate(expirationDate != null ? Instant.ofEpochMilli(expirationDate) : null);
+            event.setTimeToLiveInSeconds(readLong(in));
+            String payload = readString(in);
+            event.setPayload(payload != null ? new RawJsonPayload(payload) : null);
+            return event;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Error while decoding a binary event", ex);
+        }
+    }
+
+    private String payloadToJson(Object payload) throws IOException {
+        if (payload == null) return null;
+        if (payload instanceof RawJsonPayload) return ((RawJsonPayload) payload).getJson();
+        return objectMapper.writeValueAsString(payload);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeLong(value);
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+}
@@ -0,0 +1,17 @@
+package fr.volkaert.event_broker.encoding;
+
+import fr.volkaert.event_broker.model.InflightEvent;
+
+// Encoding of an InflightEvent in a Pulsar message. The name of the encoding is stored in the ENCODING_PROPERTY
+// property of the message so the topics containing messages with various encodings can be read (useful during the
+// migration of an event type from an encoding to another).
+public interface InflightEventCodec {
+
+    String ENCODING_PROPERTY = "encoding";
+
+    String getName();
+
+    byte[] encode(InflightEvent event);
+
+    InflightEvent decode(byte[] data);
+}
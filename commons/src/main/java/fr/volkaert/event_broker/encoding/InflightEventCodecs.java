@@ -0,0 +1,31 @@
+package fr.volkaert.event_broker.encoding;
+
+import java.util.Map;
+
+// Available encodings of the InflightEvents in the Pulsar topics. JSON is the default.
+public final class InflightEventCodecs {
+
+    public static final InflightEventCodec JSON = new JsonInflightEventCodec();
+    public static final InflightEventCodec BINARY = new BinaryInflightEventCodec();
+
+    private InflightEventCodecs() {
+    }
+
+    // Returns the JSON codec if the name is null, empty or unknown
+    public static InflightEventCodec forName(String name) {
+        if (name != null && BINARY.getName().equalsIgnoreCase(name.trim())) {
+            return BINARY;
+        }
+        return JSON;
+    }
+
+    // The encoding is given by the ENCODING_PROPERTY of the message if present, otherwise it is detected from the
+    // first byte (the messages published before the introduction of the encodings are in JSON without property)
+    public static InflightEventCodec forMessage(byte[] data, Map<String, String> properties) {
+        String name = properties != null ? properties.get(InflightEventCodec.ENCODING_PROPERTY) : null;
+        if (name != null) {
+            return forName(name);
+        }
+        return data != null && data.length > 0 && data[0] == BinaryInflightEventCodec.MAGIC ? BINARY : JSON;
+    }
+}
@@ -0,0 +1,66 @@
+package fr.volkaert.event_broker.encoding;
+
+import fr.volkaert.event_broker.model.InflightEvent;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+// Attributes of an InflightEvent copied in the properties of its Pulsar message by the Publication Manager, so the
+// Subscription Manager can decide whether the event must be delivered (channel, expiration, event type) without decoding
+// the message (the payload is only decoded for the events which are actually delivered or recorded in the DLQ).
+// The messages published before the introduction of these properties have no EVENT_TYPE_CODE_PROPERTY and must be decoded.
+public final class InflightEventHeaders {
+
+    public static final String ID_PROPERTY = "id";
+    public static final String BUSINESS_ID_PROPERTY = "businessId";
+    public static final String EVENT_TYPE_CODE_PROPERTY = "eventTypeCode";
+    public static final String PUBLICATION_CODE_PROPERTY = "publicationCode";
+    public static final String CHANNEL_PROPERTY = "channel";    // absent if the event has no channel
+    public static final String EXPIRATION_DATE_PROPERTY = "expirationDate";    // epoch millis
+
+    private InflightEventHeaders() {
+    }
+
+    // The null attributes are not put in the properties
+    public static Map<String, String> toProperties(InflightEvent event) {
+        Map<String, String> properties = new HashMap<>();
+        putIfNotNull(properties, ID_PROPERTY, event.getId());
+        putIfNotNull(properties, BUSINESS_ID_PROPERTY, event.getBusinessId());
+        putIfNotNull(properties, EVENT_TYPE_CODE_PROPERTY, event.getEventTypeCode());
+        putIfNotNull(properties, PUBLICATION_CODE_PROPERTY, event.getPublicationCode());
+        putIfNotNull(properties, CHANNEL_PROPERTY, event.getChannel());
+        if (event.getExpirationDate() != null) {
+            properties.put(EXPIRATION_DATE_PROPERTY, Long.toString(event.getExpirationDate().toEpochMilli()));
+        }
+        return properties;
+    }
+
+    // Returns an event with the attributes found in the properties but without payload, or null if the properties do
+    // not contain the headers (the message must then be decoded)
+    public static InflightEvent fromProperties(Map<String, String> properties) {
+        if (properties == null || properties.get(EVENT_TYPE_CODE_PROPERTY) == null || properties.get(EXPIRATION_DATE_PROPERTY) == null) {
+            return null;
+        }
+        Instant expirationDate;
+        try {
+            expirationDate = Instant.ofEpochMilli(Long.parseLong(properties.get(EXPIRATION_DATE_PROPERTY)));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        InflightEvent event = new InflightEvent();
+        event.setId(properties.get(ID_PROPERTY));
+        event.setBusinessId(properties.get(BUSINESS_ID_PROPERTY));
+        event.setEventTypeCode(properties.get(EVENT_TYPE_CODE_PROPERTY));
+        event.setPublicationCode(properties.get(PUBLICATION_CODE_PROPERTY));
+        event.setChannel(properties.get(CHANNEL_PROPERTY));
+        event.setExpirationDate(expirationDate);
+        return event;
+    }
+
+    private static void putIfNotNull(Map<String, String> properties, String name, String value) {
+        if (value != null) {
+            properties.put(name, value);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package fr.volkaert.event_broker.encoding;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.volkaert.event_broker.model.InflightEvent;
+
+import java.io.IOException;
+
+// Default encoding. Produces the same JSON as the Pulsar JSON schema used so far for the InflightEvent class, so the
+// messages can still be read by consumers using that schema.
+public class JsonInflightEventCodec implements InflightEventCodec {
+
+    public static final String NAME = "json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(InflightEvent event) {
+        try {
+            return objectMapper.writeValueAsBytes(event);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Error while encoding the event " + event.toShortLog() + " in JSON", ex);
+        }
+    }
+
+    @Override
+    public InflightEvent decode(byte[] data) {
+        try {
+            return objectMapper.readValue(data, InflightEvent.class);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Error while decoding a JSON event", ex);
+        }
+    }
+}
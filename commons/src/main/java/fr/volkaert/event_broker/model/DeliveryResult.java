@@ -0,0 +1,44 @@
+package fr.volkaert.event_broker.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Result of the delivery of one event to its webhook, returned by the Subscription Adapter (see the /webhooks endpoints)
+// instead of the whole InflightEvent (payload and credentials included), and merged by the Subscription Manager into its
+// own copy of the event. The attributes have the same names as in InflightEvent, so a DeliveryResult can also be read
+// from the InflightEvent returned by a previous version of the Subscription Adapter.
+@Data
+@NoArgsConstructor
+public class DeliveryResult {
+
+    private String id;                  // id of the delivered event
+    private int webhookHttpStatus;      // HTTP status code returned by the webhook
+    private boolean webhookConnectionErrorOccurred;
+    private boolean webhookReadTimeoutErrorOccurred;
+    private boolean webhookServer5xxErrorOccurred;
+    private boolean webhookClient4xxErrorOccurred;
+    private boolean webhookAuth401r403ErrorOccurred;
+    private Long deliveryDurationInMillis;  // time spent by the Subscription Adapter (webhook call included); null if unknown
+
+    public static DeliveryResult from(InflightEvent event, Long deliveryDurationInMillis) {
+        DeliveryResult result = new DeliveryResult();
+        result.setId(event.getId());
+        result.setWebhookHttpStatus(event.getWebhookHttpStatus());
+        result.setWebhookConnectionErrorOccurred(event.isWebhookConnectionErrorOccurred());
+        result.setWebhookReadTimeoutErrorOccurred(event.isWebhookReadTimeoutErrorOccurred());
+        result.setWebhookServer5xxErrorOccurred(event.isWebhookServer5xxErrorOccurred());
+        result.setWebhookClient4xxErrorOccurred(event.isWebhookClient4xxErrorOccurred());
+        result.setWebhookAuth401r403ErrorOccurred(event.isWebhookAuth401r403ErrorOccurred());
+        result.setDeliveryDurationInMillis(deliveryDurationInMillis);
+        return result;
+    }
+
+    public void applyTo(InflightEvent event) {
+        event.setWebhookHttpStatus(webhookHttpStatus);
+        event.setWebhookConnectionErrorOccurred(webhookConnectionErrorOccurred);
+        event.setWebhookReadTimeoutErrorOccurred(webhookReadTimeoutErrorOccurred);
+        event.setWebhookServer5xxErrorOccurred(webhookServer5xxErrorOccurred);
+        event.setWebhookClient4xxErrorOccurred(webhookClient4xxErrorOccurred);
+        event.setWebhookAuth401r403ErrorOccurred(webhookAuth401r403ErrorOccurred);
+    }
+}
@@ -18,4 +18,16 @@ public class EventType {
     private String code;
     private String name;
     private boolean active;
+
+    // Encoding of the events in the Pulsar topic: "json" (default if null) or "binary" (compact, see BinaryInflightEventCodec).
+    // Both encodings can be mixed in a topic, so the encoding can be changed without draining the topic.
+    private String topicEncoding;
+
+    // Optional tuning of the Pulsar producer used to publish the events of this event type.
+    // If null, the Pulsar default is used. The producer is rebuilt by the Publication Manager when these values change.
+    private Long producerBatchingMaxPublishDelayInMillis;   // Pulsar default is 1 ms
+    private Integer producerBatchingMaxMessages;            // Pulsar default is 1000
+    private String producerCompressionType;                 // allowed values are "none", "lz4", "zlib", "zstd" and "snappy"
+    private Integer producerMaxPendingMessages;             // Pulsar default is 1000
+    private Boolean producerBlockIfQueueFull;               // Pulsar default is false (the publication fails if the queue of pending messages is full)
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import fr.volkaert.event_broker.util.MyCustomInstantDeserializer;
 import fr.volkaert.event_broker.util.MyCustomInstantSerializer;
+import fr.volkaert.event_broker.util.RawJsonPayloadDeserializer;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.http.MediaType;
@@ -20,9 +21,13 @@ public class InflightEvent {
     private String publicationCode;
     private String subscriptionCode;
 
+    @JsonDeserialize(using = RawJsonPayloadDeserializer.class)  // the payload is kept as raw JSON (see RawJsonPayload)
     private Object payload;
     private Long timeToLiveInSeconds;
     private String channel;
+    // Optional key of the event for the idempotent publication (see the Publication Manager). Only used in the requests
+    // to the Publication Manager: it is removed before the event is sent to Pulsar.
+    private String idempotencyKey;
 
     // Attributes filled by the broker
     private String id;
@@ -47,6 +52,7 @@ public class InflightEvent {
     private boolean webhookServer5xxErrorOccurred;
     private boolean webhookClient4xxErrorOccurred;
     private boolean webhookAuth401r403ErrorOccurred;
+    private boolean webhookBatchItemStatusEnabled;  // see Subscription.deliveryBatchItemStatusEnabled (only used for batch delivery)
 
     private String authMethod = "basicauth";    // allowed values are "basicauth" and "oauth2"; if null, "basicauth" is used by default
     private String authClientId;
@@ -82,6 +88,7 @@ public class InflightEvent {
         clone.setWebhookServer5xxErrorOccurred(webhookServer5xxErrorOccurred);
         clone.setWebhookClient4xxErrorOccurred(webhookClient4xxErrorOccurred);
         clone.setWebhookAuth401r403ErrorOccurred(webhookAuth401r403ErrorOccurred);
+        clone.setWebhookBatchItemStatusEnabled(webhookBatchItemStatusEnabled);
         clone.setAuthMethod("*****"); // SENSITIVE DATA !
         clone.setAuthClientId("*****"); // SENSITIVE DATA !
         clone.setAuthClientSecret("*****"); // SENSITIVE DATA !
@@ -0,0 +1,28 @@
+package fr.volkaert.event_broker.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Result of the publication of one event of a batch (see the /events/batch endpoints)
+@Data
+@NoArgsConstructor
+public class PublicationResult {
+
+    private InflightEvent event;    // the published event (without its payload); null if the publication failed
+    private int status;             // HTTP status code for this event (201 if the event was published)
+    private String error;           // error message if the publication failed
+
+    public static PublicationResult succeeded(InflightEvent event) {
+        PublicationResult result = new PublicationResult();
+        result.setEvent(event);
+        result.setStatus(201);
+        return result;
+    }
+
+    public static PublicationResult failed(int status, String error) {
+        PublicationResult result = new PublicationResult();
+        result.setStatus(status);
+        result.setError(error);
+        return result;
+    }
+}
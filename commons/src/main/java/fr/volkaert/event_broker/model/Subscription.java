@@ -38,4 +38,27 @@ public class Subscription {
     private Long timeToLiveInSecondsForWebhookServer5xxError;       // If null or 0, use the defaultTimeToLiveInSecondsForWebhookServer5xxError in BrokerConfig
     private Long timeToLiveInSecondsForWebhookClient4xxError;       // If null or 0, use the defaultTimeToLiveInSecondsForWebhookClient4xxError in BrokerConfig
     private Long timeToLiveInSecondsForWebhookAuth401Or403Error;       // If null or 0, use the defaultTimeToLiveInSecondsForWebhookAuth401Or403Error in BrokerConfig
+
+    private Long maxRedeliveryBackoffInMillis;  // Max delay before the redelivery of a failed event. If null or 0, use the defaultMaxRedeliveryBackoffInMillis in BrokerConfig
+
+    // Allowed values are "failover" (default if null), "shared" and "key_shared" (see SubscriptionType in the transport package).
+    // With "failover", the events of the subscription are consumed by only one instance of the Subscription Manager
+    // (see SubscriptionAssignment in the Subscription Manager). With "shared" or "key_shared", they are consumed by all the instances in parallel:
+    // without order guarantee for "shared", and in order for a given businessId for "key_shared".
+    private String consumerSubscriptionType;
+
+    private Integer weight;     // Relative load of the subscription, to balance the failover subscriptions among the instances. If null or 0, 1 is used.
+
+    private Integer deliveryConcurrency;            // Max number of concurrent deliveries. If null or 0, use the defaultDeliveryConcurrency in BrokerConfig
+    private Boolean deliveryOrderedByBusinessId;    // If true, the events with the same businessId are delivered in order (even if deliveryConcurrency > 1)
+
+    // If deliveryBatchMaxSize > 1, the events are delivered by batches: the webhook receives a JSON array of events (at most
+    // deliveryBatchMaxSize events and deliveryBatchMaxBytes bytes) and the whole batch is acked or nacked according to its
+    // response. A batch is sent as soon as it is full or when its oldest event has waited deliveryBatchMaxLingerInMillis.
+    private Integer deliveryBatchMaxSize;           // If null, 0 or 1, the events are delivered one at a time
+    private Integer deliveryBatchMaxBytes;          // If null or 0, the size of a batch is only bounded by deliveryBatchMaxSize
+    private Long deliveryBatchMaxLingerInMillis;    // If null, the defaultDeliveryBatchMaxLingerInMillis in BrokerConfig is used
+    // If true, the webhook may return a JSON array of item statuses ({"id": "<event id>", "httpStatus": 200}) to ack or
+    // nack each event of the batch separately (the events without item status get the HTTP status of the response)
+    private Boolean deliveryBatchItemStatusEnabled;
 }
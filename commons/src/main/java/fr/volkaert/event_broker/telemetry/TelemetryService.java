@@ -2,6 +2,7 @@ package fr.volkaert.event_broker.telemetry;
 
 import fr.volkaert.event_broker.model.InflightEvent;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
@@ -26,6 +27,16 @@ public class TelemetryService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TelemetryService.class);
 
     private final Map<String, AtomicLong> pendingPublicationGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> deliveryQueueSizeGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> deliveryCircuitBreakerStateGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> webhookConcurrencyLimitGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> webhookInflightDeliveriesGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> webhookRttGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> webhookConnectionPoolGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> webhookLeasedConnectionsGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> webhookBulkheadActiveCallsGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> webhookBulkheadWaitingCallsGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> oauth2TokenCacheCounters = new ConcurrentHashMap<>();
     //private final Map<String, AtomicLong> pendingDeliveriesGauges = new ConcurrentHashMap<>();
 
 
@@ -132,6 +143,26 @@ public class TelemetryService {
         return msg;
     }
 
+    public synchronized String eventPublicationDeduplicated(InflightEvent event) {
+        String msg = "";
+        try {
+            msg = String.format("Event publication deduplicated (the event has already been published). Event is %s.", event.toShortLog());
+            LOGGER.info(msg);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for eventPublicationDeduplicated", ex);
+        }
+        try {
+            String publicationCode = event.getPublicationCode();
+            String eventTypeCode = event.getEventTypeCode();
+            Counter counter1 = meterRegistry.counter("event_publications_deduplicated_total",
+                    Tags.of("publication_code", publicationCode, "event_type_code", eventTypeCode));
+            counter1.increment();
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metrics for eventPublicationDeduplicated", ex);
+        }
+        return msg;
+    }
+
     public synchronized String eventPublicationAttempted(InflightEvent event) {
         String msg = "";
         try {
@@ -478,4 +509,306 @@ public class TelemetryService {
         }
         return msg;
     }
+
+
+    // DELIVERY QUEUES /////////////////////////////////////////////////////////////////////////////////////////////////
+
+
+    // The returned gauge is updated by the caller (without lock) each time a message is queued or dequeued
+    public AtomicLong deliveryQueueSizeGauge(String subscriptionCode) {
+        return deliveryQueueSizeGauges.computeIfAbsent(subscriptionCode, x ->
+                meterRegistry.gauge("event_delivery_queue_size",
+                        Tags.of("subscription_code", subscriptionCode),
+                        new AtomicLong(0)));
+    }
+
+    public synchronized void eventDeliveryDequeued(String subscriptionCode, long waitTimeInNanos) {
+        try {
+            Timer waitTimer = meterRegistry.timer("event_delivery_queue_wait_duration",
+                    Tags.of("subscription_code", subscriptionCode));
+            waitTimer.record(waitTimeInNanos, TimeUnit.NANOSECONDS);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for eventDeliveryDequeued", ex);
+        }
+    }
+
+    public synchronized String eventDeliveryPaused(String subscriptionCode, int queueSize) {
+        String msg = "";
+        try {
+            msg = String.format("Event delivery paused for subscription %s since %d messages are waiting for delivery.",
+                    subscriptionCode, queueSize);
+            LOGGER.warn(msg);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for eventDeliveryPaused", ex);
+        }
+        try {
+            Counter counter1 = meterRegistry.counter("event_delivery_pauses_total",
+                    Tags.of("subscription_code", subscriptionCode));
+            counter1.increment();
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for eventDeliveryPaused", ex);
+        }
+        return msg;
+    }
+
+    public synchronized String eventDeliveryResumed(String subscriptionCode, int queueSize) {
+        String msg = "";
+        try {
+            msg = String.format("Event delivery resumed for subscription %s (%d messages are waiting for delivery).",
+                    subscriptionCode, queueSize);
+            LOGGER.info(msg);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for eventDeliveryResumed", ex);
+        }
+        return msg;
+    }
+
+
+    // DELIVERY CIRCUIT BREAKERS ///////////////////////////////////////////////////////////////////////////////////////
+
+
+    // The returned gauge is updated by the caller (0 = closed, 1 = half-open, 2 = open)
+    public AtomicLong deliveryCircuitBreakerStateGauge(String subscriptionCode) {
+        return deliveryCircuitBreakerStateGauges.computeIfAbsent(subscriptionCode, x ->
+                meterRegistry.gauge("event_delivery_circuit_breaker_state",
+                        Tags.of("subscription_code", subscriptionCode),
+                        new AtomicLong(0)));
+    }
+
+    public synchronized String eventDeliveryCircuitBreakerStateChanged(String subscriptionCode, String oldState, String newState,
+                                                                       int consecutiveFailures) {
+        String msg = "";
+        try {
+            msg = String.format("Circuit breaker of subscription %s changed from %s to %s (%d consecutive failed deliveries).",
+                    subscriptionCode, oldState, newState, consecutiveFailures);
+            if ("OPEN".equals(newState)) {
+                LOGGER.warn(msg);
+            } else {
+                LOGGER.info(msg);
+            }
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for eventDeliveryCircuitBreakerStateChanged", ex);
+        }
+        try {
+            Counter counter1 = meterRegistry.counter("event_delivery_circuit_breaker_transitions_total",
+                    Tags.of("subscription_code", subscriptionCode, "state", newState.toLowerCase()));
+            counter1.increment();
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for eventDeliveryCircuitBreakerStateChanged", ex);
+        }
+        return msg;
+    }
+
+
+    // WEBHOOK CONCURRENCY LIMITS //////////////////////////////////////////////////////////////////////////////////////
+
+
+    // The returned gauges are updated by the caller
+    public AtomicLong webhookConcurrencyLimitGauge(String webhookHost) {
+        return webhookConcurrencyLimitGauges.computeIfAbsent(webhookHost, x ->
+                meterRegistry.gauge("webhook_concurrency_limit",
+                        Tags.of("webhook_host", webhookHost),
+                        new AtomicLong(0)));
+    }
+
+    public AtomicLong webhookInflightDeliveriesGauge(String webhookHost) {
+        return webhookInflightDeliveriesGauges.computeIfAbsent(webhookHost, x ->
+                meterRegistry.gauge("webhook_inflight_deliveries",
+                        Tags.of("webhook_host", webhookHost),
+                        new AtomicLong(0)));
+    }
+
+    public AtomicLong webhookRttGauge(String webhookHost) {
+        return webhookRttGauges.computeIfAbsent(webhookHost, x ->
+                meterRegistry.gauge("webhook_rtt_in_millis",
+                        Tags.of("webhook_host", webhookHost),
+                        new AtomicLong(0)));
+    }
+
+
+    // WEBHOOK CONNECTION POOL /////////////////////////////////////////////////////////////////////////////////////////
+
+
+    // The returned gauges are updated by the caller (state is leased, available, pending or max)
+    public AtomicLong webhookConnectionPoolGauge(String state) {
+        return webhookConnectionPoolGauges.computeIfAbsent(state, x ->
+                meterRegistry.gauge("webhook_connection_pool_connections",
+                        Tags.of("state", state),
+                        new AtomicLong(0)));
+    }
+
+    public AtomicLong webhookLeasedConnectionsGauge(String webhookHost) {
+        return webhookLeasedConnectionsGauges.computeIfAbsent(webhookHost, x ->
+                meterRegistry.gauge("webhook_leased_connections",
+                        Tags.of("webhook_host", webhookHost),
+                        new AtomicLong(0)));
+    }
+
+    public synchronized void webhookConnectionLeased(String webhookHost, long waitTimeInNanos) {
+        try {
+            Timer waitTimer = meterRegistry.timer("webhook_connection_pool_wait_duration",
+                    Tags.of("webhook_host", webhookHost));
+            waitTimer.record(waitTimeInNanos, TimeUnit.NANOSECONDS);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for webhookConnectionLeased", ex);
+        }
+    }
+
+
+    // WEBHOOK BULKHEADS ///////////////////////////////////////////////////////////////////////////////////////////////
+
+
+    // The returned gauges are updated by the caller
+    public AtomicLong webhookBulkheadActiveCallsGauge(String webhookHost) {
+        return webhookBulkheadActiveCallsGauges.computeIfAbsent(webhookHost, x ->
+                meterRegistry.gauge("webhook_bulkhead_active_calls",
+                        Tags.of("webhook_host", webhookHost),
+                        new AtomicLong(0)));
+    }
+
+    public AtomicLong webhookBulkheadWaitingCallsGauge(String webhookHost) {
+        return webhookBulkheadWaitingCallsGauges.computeIfAbsent(webhookHost, x ->
+                meterRegistry.gauge("webhook_bulkhead_waiting_calls",
+                        Tags.of("webhook_host", webhookHost),
+                        new AtomicLong(0)));
+    }
+
+    public synchronized String webhookCallRejectedByBulkhead(String webhookHost, int maxConcurrentCalls, String subscriptionCode) {
+        String msg = "";
+        try {
+            msg = String.format("Call to the webhook host %s rejected for subscription %s since %d calls to this host are already in progress.",
+                    webhookHost, subscriptionCode, maxConcurrentCalls);
+            LOGGER.warn(msg);   // WARN and not ERROR !
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for webhookCallRejectedByBulkhead", ex);
+        }
+        try {
+            Counter counter1 = meterRegistry.counter("webhook_bulkhead_rejections_total",
+                    Tags.of("webhook_host", webhookHost, "subscription_code", subscriptionCode));
+            counter1.increment();
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for webhookCallRejectedByBulkhead", ex);
+        }
+        return msg;
+    }
+
+    public synchronized String eventDeliveryPostponedDueToBusyWebhookHost(InflightEvent event) {
+        String msg = "";
+        try {
+            msg = String.format("Event delivery postponed since the webhook host is busy. Event is %s.", event.toShortLog());
+            LOGGER.warn(msg);   // WARN and not ERROR !
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for eventDeliveryPostponedDueToBusyWebhookHost", ex);
+        }
+        try {
+            String subscriptionCode = event.getSubscriptionCode();
+            String eventTypeCode = event.getEventTypeCode();
+            String publicationCode = event.getPublicationCode();
+            Counter counter1 = meterRegistry.counter("event_deliveries_postponed_due_to_busy_webhook_host_total",
+                    Tags.of("subscription_code", subscriptionCode, "event_type_code", eventTypeCode, "publication_code", publicationCode));
+            counter1.increment();
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for eventDeliveryPostponedDueToBusyWebhookHost", ex);
+        }
+        return msg;
+    }
+
+
+    // OAUTH2 TOKEN CACHE //////////////////////////////////////////////////////////////////////////////////////////////
+
+
+    // The returned counters are incremented by the caller (without lock, since they are incremented for each webhook call)
+    public AtomicLong oauth2TokenCacheHitsCounter() {
+        return oauth2TokenCacheCounters.computeIfAbsent("hits", x -> {
+            AtomicLong hits = new AtomicLong(0);
+            FunctionCounter.builder("oauth2_token_cache_hits_total", hits, AtomicLong::get).register(meterRegistry);
+            return hits;
+        });
+    }
+
+    public AtomicLong oauth2TokenCacheMissesCounter() {
+        return oauth2TokenCacheCounters.computeIfAbsent("misses", x -> {
+            AtomicLong misses = new AtomicLong(0);
+            FunctionCounter.builder("oauth2_token_cache_misses_total", misses, AtomicLong::get).register(meterRegistry);
+            return misses;
+        });
+    }
+
+    // The returned gauge is updated by the caller
+    public AtomicLong oauth2TokenCacheSizeGauge() {
+        return oauth2TokenCacheCounters.computeIfAbsent("size", x ->
+                meterRegistry.gauge("oauth2_token_cache_size", new AtomicLong(0)));
+    }
+
+    // trigger is on_demand (no valid token in the cache) or refresh_ahead
+    public synchronized String oauth2TokenFetched(String authScope, String trigger, long fetchDurationInNanos) {
+        String msg = "";
+        try {
+            msg = String.format("OAuth2 token fetched for scope %s (%s) in %d ms.", authScope, trigger,
+                    TimeUnit.NANOSECONDS.toMillis(fetchDurationInNanos));
+            LOGGER.debug(msg);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for oauth2TokenFetched", ex);
+        }
+        try {
+            Timer fetchTimer = meterRegistry.timer("oauth2_token_fetch_duration",
+                    Tags.of("scope", authScope, "trigger", trigger, "result", "success"));
+            fetchTimer.record(fetchDurationInNanos, TimeUnit.NANOSECONDS);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for oauth2TokenFetched", ex);
+        }
+        return msg;
+    }
+
+    public synchronized String oauth2TokenFetchFailed(String authScope, String trigger, Exception exception, long fetchDurationInNanos) {
+        String msg = "";
+        try {
+            msg = String.format("Error while fetching the OAuth2 token for scope %s (%s) after %d ms. Exception is %s.",
+                    authScope, trigger, TimeUnit.NANOSECONDS.toMillis(fetchDurationInNanos), exception);
+            LOGGER.error(msg, exception);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for oauth2TokenFetchFailed", ex);
+        }
+        try {
+            Timer fetchTimer = meterRegistry.timer("oauth2_token_fetch_duration",
+                    Tags.of("scope", authScope, "trigger", trigger, "result", "failure"));
+            fetchTimer.record(fetchDurationInNanos, TimeUnit.NANOSECONDS);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for oauth2TokenFetchFailed", ex);
+        }
+        return msg;
+    }
+
+
+    // WARM-UP /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized String pulsarWarmUpFinished(String resourceType, int createdCount, int failedCount,
+                                                    boolean timedOut, Instant warmUpStart) {
+        String msg = "";
+        Duration warmUpDuration = Duration.between(warmUpStart, Instant.now());
+        try {
+            msg = String.format("Warm-up of Pulsar %s %s in %d ms: %d created, %d failed.", resourceType,
+                    (timedOut ? "timed out" : "finished"), warmUpDuration.toMillis(), createdCount, failedCount);
+            if (timedOut || failedCount > 0) {
+                LOGGER.warn(msg);
+            } else {
+                LOGGER.info(msg);
+            }
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording log for pulsarWarmUpFinished", ex);
+        }
+        try {
+            Timer warmUpTimer = meterRegistry.timer("pulsar_warm_up_duration",
+                    Tags.of("resource_type", resourceType, "outcome", (timedOut ? "timed_out" : "finished")));
+            warmUpTimer.record(warmUpDuration.toMillis(), TimeUnit.MILLISECONDS);
+
+            meterRegistry.counter("pulsar_warm_up_resources_total",
+                    Tags.of("resource_type", resourceType, "outcome", "created")).increment(createdCount);
+            meterRegistry.counter("pulsar_warm_up_resources_total",
+                    Tags.of("resource_type", resourceType, "outcome", "failed")).increment(failedCount);
+        } catch (Exception ex) {
+            LOGGER.error("Error while recording metric for pulsarWarmUpFinished", ex);
+        }
+        return msg;
+    }
 }
@@ -0,0 +1,20 @@
+package fr.volkaert.event_broker.transport;
+
+import java.util.concurrent.CompletableFuture;
+
+// Messaging system used by the broker to store and dispatch the events (see PulsarMessagingTransport and
+// InMemoryMessagingTransport). A topic is identified by its name (the event type code for the events, or the name of
+// a DLQ topic).
+public interface MessagingTransport extends AutoCloseable {
+
+    String getName();
+
+    CompletableFuture<TransportPublisher> createPublisherAsync(String topic, PublisherSettings settings);
+
+    // The listener is called for each received message, on a thread of the transport. Messages of a subscriber are
+    // passed to the listener one at a time.
+    CompletableFuture<TransportSubscriber> subscribeAsync(SubscriberSettings settings, TransportMessageListener listener);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,37 @@
+package fr.volkaert.event_broker.transport;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class OutgoingMessage {
+
+    private byte[] data;
+    private String key;     // may be null. Messages with the same key are dispatched in order (see SubscriptionType.KEY_SHARED)
+    private Map<String, String> properties = new HashMap<>();
+
+    public OutgoingMessage(byte[] data) {
+        this.data = data;
+    }
+
+    public OutgoingMessage withKey(String key) {
+        this.key = key;
+        return this;
+    }
+
+    public OutgoingMessage withProperty(String name, String value) {
+        if (value != null) {
+            properties.put(name, value);
+        }
+        return this;
+    }
+
+    public OutgoingMessage withProperties(Map<String, String> properties) {
+        properties.forEach(this::withProperty);
+        return this;
+    }
+}
@@ -0,0 +1,29 @@
+package fr.volkaert.event_broker.transport;
+
+import fr.volkaert.event_broker.model.EventType;
+import lombok.Value;
+
+// Tuning of a publisher, as defined in the EventType of the catalog (null means transport default).
+// Immutable and comparable with equals() so the Publication Manager can detect a change in the catalog.
+// A transport may ignore the settings that make no sense for it.
+@Value
+public class PublisherSettings {
+
+    public static final PublisherSettings DEFAULT = new PublisherSettings(null, null, null, null, null);
+
+    Long batchingMaxPublishDelayInMillis;
+    Integer batchingMaxMessages;
+    String compressionType;     // "none", "lz4", "zlib", "zstd" or "snappy"
+    Integer maxPendingMessages;
+    Boolean blockIfQueueFull;
+
+    public static PublisherSettings from(EventType eventType) {
+        return new PublisherSettings(
+                eventType.getProducerBatchingMaxPublishDelayInMillis(),
+                eventType.getProducerBatchingMaxMessages(),
+                eventType.getProducerCompressionType() != null && ! eventType.getProducerCompressionType().trim().isEmpty() ?
+                        eventType.getProducerCompressionType().trim().toLowerCase() : null,
+                eventType.getProducerMaxPendingMessages(),
+                eventType.getProducerBlockIfQueueFull());
+    }
+}
@@ -0,0 +1,22 @@
+package fr.volkaert.event_broker.transport;
+
+import java.util.Map;
+
+public interface ReceivedMessage {
+
+    String getMessageId();
+
+    byte[] getData();
+
+    String getKey();    // may be null
+
+    Map<String, String> getProperties();
+
+    default String getProperty(String name) {
+        return getProperties().get(name);
+    }
+
+    int getRedeliveryCount();   // number of negative acks of this message by the subscribers of the subscription
+
+    long getPublishTime();  // epoch millis
+}
@@ -0,0 +1,19 @@
+package fr.volkaert.event_broker.transport;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class SubscriberSettings {
+
+    private String topic;
+    private String subscriptionName;
+    private SubscriptionType subscriptionType = SubscriptionType.FAILOVER;
+    private long defaultRedeliveryDelayInMillis = 60000;    // used by TransportSubscriber.negativeAcknowledge(message)
+
+    public SubscriberSettings(String topic, String subscriptionName) {
+        this.topic = topic;
+        this.subscriptionName = subscriptionName;
+    }
+}
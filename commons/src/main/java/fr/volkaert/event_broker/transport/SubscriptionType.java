@@ -0,0 +1,7 @@
+package fr.volkaert.event_broker.transport;
+
+public enum SubscriptionType {
+    FAILOVER,   // only one active subscriber per subscription (the others are on standby)
+    SHARED,     // messages are dispatched to all the subscribers of the subscription, without order guarantee
+    KEY_SHARED  // messages are dispatched to all the subscribers, but the messages with the same key to the same subscriber
+}
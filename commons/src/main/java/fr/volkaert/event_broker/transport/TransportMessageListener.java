@@ -0,0 +1,8 @@
+package fr.volkaert.event_broker.transport;
+
+@FunctionalInterface
+public interface TransportMessageListener {
+
+    // *** SHOULD NEVER RAISE/THROW AN EXCEPTION !!! *** (the message must be acked or nacked by the listener)
+    void onMessage(TransportSubscriber subscriber, ReceivedMessage message);
+}
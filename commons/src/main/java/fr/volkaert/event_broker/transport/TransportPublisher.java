@@ -0,0 +1,18 @@
+package fr.volkaert.event_broker.transport;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface TransportPublisher {
+
+    String getTopic();
+
+    // Settings the publisher has been created with
+    PublisherSettings getSettings();
+
+    // The returned future is completed with the id of the message once the message is stored by the transport
+    CompletableFuture<String> publishAsync(OutgoingMessage message);
+
+    CompletableFuture<Void> flushAsync();
+
+    CompletableFuture<Void> closeAsync();
+}
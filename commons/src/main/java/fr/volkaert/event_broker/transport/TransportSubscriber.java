@@ -0,0 +1,32 @@
+package fr.volkaert.event_broker.transport;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public interface TransportSubscriber {
+
+    String getTopic();
+
+    String getSubscriptionName();
+
+    void acknowledge(ReceivedMessage message);
+
+    // The message will be redelivered after the default redelivery delay of the subscription (see SubscriberSettings)
+    void negativeAcknowledge(ReceivedMessage message);
+
+    // The message will be redelivered after the given delay (with its redelivery count incremented). The other unacked
+    // messages are not redelivered, and the pending redeliveries are not held in memory by the Pulsar transport (see
+    // PulsarTransportSubscriber).
+    void negativeAcknowledge(ReceivedMessage message, long delay, TimeUnit unit);
+
+    // The message will be redelivered after the given delay WITHOUT its redelivery count incremented (for a message which
+    // has not been delivered, for instance because its destination was busy)
+    void postpone(ReceivedMessage message, long delay, TimeUnit unit);
+
+    // Stops/restarts the delivery of the messages to the listener (messages already delivered are not affected)
+    void pause();
+
+    void resume();
+
+    CompletableFuture<Void> closeAsync();
+}
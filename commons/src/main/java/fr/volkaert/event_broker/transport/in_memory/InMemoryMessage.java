@@ -0,0 +1,85 @@
+package fr.volkaert.event_broker.transport.in_memory;
+
+import fr.volkaert.event_broker.transport.ReceivedMessage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// Immutable, so the same message can be dispatched to several subscriptions
+class InMemoryMessage implements ReceivedMessage {
+
+    private final String messageId;
+    private final byte[] data;
+    private final String key;
+    private final Map<String, String> properties;
+    private final int redeliveryCount;
+    private final long publishTime;
+
+    private InMemoryMessage(String messageId, byte[] data, String key, Map<String, String> properties,
+                            int redeliveryCount, long publishTime) {
+        this.messageId = messageId;
+        this.data = data;
+        this.key = key;
+        this.properties = properties;
+        this.redeliveryCount = redeliveryCount;
+        this.publishTime = publishTime;
+    }
+
+    InMemoryMessage redelivered() {
+        return new InMemoryMessage(messageId, data, key, properties, redeliveryCount + 1, publishTime);
+    }
+
+    @Override
+    public String getMessageId() {
+        return messageId;
+    }
+
+    // Pay attention: the array is shared by all the subscriptions, so it must not be modified
+    @Override
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public int getRedeliveryCount() {
+        return redeliveryCount;
+    }
+
+    @Override
+    public long getPublishTime() {
+        return publishTime;
+    }
+
+    @Override
+    public String toString() {
+        return messageId;
+    }
+
+    static class Builder {
+        private final byte[] data;
+        private final String key;
+        private final Map<String, String> properties;
+
+        Builder(byte[] data, String key, Map<String, String> properties) {
+            this.data = data;
+            this.key = key;
+            this.properties = properties == null || properties.isEmpty() ?
+                    Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(properties));
+        }
+
+        InMemoryMessage build(String messageId) {
+            return new InMemoryMessage(messageId, data, key, properties, 0, System.currentTimeMillis());
+        }
+    }
+}
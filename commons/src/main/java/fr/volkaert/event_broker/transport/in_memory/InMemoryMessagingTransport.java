@@ -0,0 +1,91 @@
+package fr.volkaert.event_broker.transport.in_memory;
+
+import fr.volkaert.event_broker.transport.MessagingTransport;
+import fr.volkaert.event_broker.transport.PublisherSettings;
+import fr.volkaert.event_broker.transport.SubscriberSettings;
+import fr.volkaert.event_broker.transport.TransportMessageListener;
+import fr.volkaert.event_broker.transport.TransportPublisher;
+import fr.volkaert.event_broker.transport.TransportSubscriber;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Messaging transport that keeps the messages in memory (lock-free queues), to run the broker without Pulsar
+// (throughput benchmarks, CI...).
+// The topics are shared by all the in-memory transports of the JVM, so a Publication Manager and a Subscription Manager
+// started in the same JVM exchange their events.
+// Pay attention: the messages are lost when the JVM stops, and a subscription only receives the messages published
+// after its first subscriber subscribed (like a Pulsar subscription created without backlog).
+public class InMemoryMessagingTransport implements MessagingTransport {
+
+    public static final String NAME = "in-memory";
+
+    private static final Map<String, InMemoryTopic> TOPICS = new ConcurrentHashMap<>();
+
+    private final ExecutorService listenerExecutor;
+    private final ScheduledExecutorService redeliveryScheduler;
+    private final Set<InMemorySubscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public InMemoryMessagingTransport() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public InMemoryMessagingTransport(int listenerThreadCount) {
+        this.listenerExecutor = Executors.newFixedThreadPool(Math.max(1, listenerThreadCount), daemonThreadFactory("in-memory-transport-listener-"));
+        this.redeliveryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("in-memory-transport-redelivery-"));
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public CompletableFuture<TransportPublisher> createPublisherAsync(String topic, PublisherSettings settings) {
+        return CompletableFuture.completedFuture(new InMemoryPublisher(getOrCreateTopic(topic), settings));
+    }
+
+    @Override
+    public CompletableFuture<TransportSubscriber> subscribeAsync(SubscriberSettings settings, TransportMessageListener listener) {
+        try {
+            InMemorySubscription subscription = getOrCreateTopic(settings.getTopic())
+                    .getOrCreateSubscription(settings.getSubscriptionName(), settings.getSubscriptionType());
+            InMemorySubscriber subscriber = new InMemorySubscriber(subscription, settings, listener,
+                    listenerExecutor, redeliveryScheduler, subscribers::remove);
+            subscribers.add(subscriber);
+            subscription.addSubscriber(subscriber);
+            return CompletableFuture.completedFuture(subscriber);
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    // The subscribers of this transport are closed (their unacked messages are given back to their subscription)
+    // but the topics are kept for the other transports of the JVM
+    @Override
+    public void close() {
+        subscribers.forEach(InMemorySubscriber::closeAsync);
+        redeliveryScheduler.shutdownNow();
+        listenerExecutor.shutdown();
+    }
+
+    private static InMemoryTopic getOrCreateTopic(String name) {
+        return TOPICS.computeIfAbsent(name, InMemoryTopic::new);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package fr.volkaert.event_broker.transport.in_memory;
+
+import fr.volkaert.event_broker.transport.OutgoingMessage;
+import fr.volkaert.event_broker.transport.PublisherSettings;
+import fr.volkaert.event_broker.transport.TransportPublisher;
+
+import java.util.concurrent.CompletableFuture;
+
+// The settings are ignored (there is no batching nor compression in memory)
+class InMemoryPublisher implements TransportPublisher {
+
+    private final InMemoryTopic topic;
+    private final PublisherSettings settings;
+    private volatile boolean closed;
+
+    InMemoryPublisher(InMemoryTopic topic, PublisherSettings settings) {
+        this.topic = topic;
+        this.settings = settings;
+    }
+
+    @Override
+    public String getTopic() {
+        return topic.getName();
+    }
+
+    @Override
+    public PublisherSettings getSettings() {
+        return settings;
+    }
+
+    // The message is stored (and dispatched to the subscriptions) before this operation returns
+    @Override
+    public CompletableFuture<String> publishAsync(OutgoingMessage message) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Publisher already closed for topic " + topic.getName()));
+        }
+        return CompletableFuture.completedFuture(topic.publish(
+                new InMemoryMessage.Builder(message.getData(), message.getKey(), message.getProperties())));
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        closed = true;
+        return CompletableFuture.completedFuture(null);
+    }
+}
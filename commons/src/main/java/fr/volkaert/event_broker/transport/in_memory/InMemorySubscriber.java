@@ -0,0 +1,171 @@
+package fr.volkaert.event_broker.transport.in_memory;
+
+import fr.volkaert.event_broker.transport.ReceivedMessage;
+import fr.volkaert.event_broker.transport.SubscriberSettings;
+import fr.volkaert.event_broker.transport.TransportMessageListener;
+import fr.volkaert.event_broker.transport.TransportSubscriber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// The messages routed to this subscriber are queued and passed to the listener one at a time by a drain task running
+// on the listener executor. At most one drain task is scheduled at a time (see drainScheduled).
+class InMemorySubscriber implements TransportSubscriber {
+
+    // Max number of messages handled by a drain task before giving its thread back to the other subscribers
+    private static final int MAX_MESSAGES_PER_DRAIN = 1000;
+
+    private final InMemorySubscription subscription;
+    private final SubscriberSettings settings;
+    private final TransportMessageListener listener;
+    private final Executor listenerExecutor;
+    private final ScheduledExecutorService redeliveryScheduler;
+    private final Consumer<InMemorySubscriber> onClose;
+
+    private final Queue<InMemoryMessage> queue = new ConcurrentLinkedQueue<>();
+    private final Map<String, InMemoryMessage> unackedMessages = new ConcurrentHashMap<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private volatile boolean paused;
+    private volatile boolean closed;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InMemorySubscriber.class);
+
+    InMemorySubscriber(InMemorySubscription subscription, SubscriberSettings settings, TransportMessageListener listener,
+                       Executor listenerExecutor, ScheduledExecutorService redeliveryScheduler, Consumer<InMemorySubscriber> onClose) {
+        this.subscription = subscription;
+        this.settings = settings;
+        this.listener = listener;
+        this.listenerExecutor = listenerExecutor;
+        this.redeliveryScheduler = redeliveryScheduler;
+        this.onClose = onClose;
+    }
+
+    void enqueue(InMemoryMessage message) {
+        queue.add(message);
+        scheduleDrain();
+    }
+
+    @Override
+    public String getTopic() {
+        return settings.getTopic();
+    }
+
+    @Override
+    public String getSubscriptionName() {
+        return settings.getSubscriptionName();
+    }
+
+    @Override
+    public void acknowledge(ReceivedMessage message) {
+        unackedMessages.remove(message.getMessageId());
+    }
+
+    @Override
+    public void negativeAcknowledge(ReceivedMessage message) {
+        negativeAcknowledge(message, settings.getDefaultRedeliveryDelayInMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void negativeAcknowledge(ReceivedMessage message, long delay, TimeUnit unit) {
+        redeliver(message, delay, unit, true);
+    }
+
+    @Override
+    public void postpone(ReceivedMessage message, long delay, TimeUnit unit) {
+        redeliver(message, delay, unit, false);
+    }
+
+    private void redeliver(ReceivedMessage message, long delay, TimeUnit unit, boolean counted) {
+        InMemoryMessage unackedMessage = unackedMessages.remove(message.getMessageId());
+        if (unackedMessage == null) {
+            return; // already acked, nacked or given back to the subscription
+        }
+        // The message is given back to the subscription (not to this subscriber) since this subscriber may be closed in the meantime
+        InMemoryMessage redelivery = counted ? unackedMessage.redelivered() : unackedMessage;
+        if (delay <= 0) {
+            subscription.route(redelivery);
+            return;
+        }
+        try {
+            redeliveryScheduler.schedule(() -> subscription.route(redelivery), delay, unit);
+        } catch (RejectedExecutionException ex) {   // the transport is closing
+            subscription.route(redelivery);
+        }
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+        scheduleDrain();
+    }
+
+    // The queued and unacked messages are given back to the subscription (so to the other subscribers if any)
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        if (! closed) {
+            closed = true;
+            subscription.removeSubscriber(this);
+            onClose.accept(this);
+            unackedMessages.keySet().forEach(messageId -> {
+                InMemoryMessage unackedMessage = unackedMessages.remove(messageId);
+                if (unackedMessage != null) {
+                    subscription.route(unackedMessage.redelivered());
+                }
+            });
+            scheduleDrain();    // to give back the queued messages
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                listenerExecutor.execute(this::drain);
+            } catch (RejectedExecutionException ex) {   // the transport is closing
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        int handledCount = 0;
+        try {
+            InMemoryMessage message;
+            while ((closed || ! paused) && handledCount < MAX_MESSAGES_PER_DRAIN && (message = queue.poll()) != null) {
+                if (closed) {
+                    subscription.route(message);
+                    continue;
+                }
+                handledCount++;
+                unackedMessages.put(message.getMessageId(), message);
+                try {
+                    listener.onMessage(this, message);
+                } catch (Exception ex) {    // should never happen...
+                    LOGGER.error("Error while handling in-memory message {} of subscription {}", message.getMessageId(), subscription, ex);
+                }
+            }
+        } finally {
+            drainScheduled.set(false);
+        }
+        // Messages may have been queued after the last poll (or the drain stopped at MAX_MESSAGES_PER_DRAIN)
+        if (! queue.isEmpty() && (closed || ! paused)) {
+            scheduleDrain();
+        }
+    }
+}
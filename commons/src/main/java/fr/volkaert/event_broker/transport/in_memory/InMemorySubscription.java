@@ -0,0 +1,85 @@
+package fr.volkaert.event_broker.transport.in_memory;
+
+import fr.volkaert.event_broker.transport.SubscriptionType;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Routes the messages of a subscription to its subscribers. Routing is lock-free (the subscribers are read from an
+// immutable array); only the changes of subscribers are synchronized.
+// The order of the messages of a key (or of all the messages for a FAILOVER subscription) is kept as long as the
+// subscribers do not change (like Pulsar, a change of subscribers may reorder the messages being redistributed).
+class InMemorySubscription {
+
+    private final String topic;
+    private final String name;
+    private final SubscriptionType type;
+    private final Queue<InMemoryMessage> backlog = new ConcurrentLinkedQueue<>(); // messages received while there is no subscriber
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private volatile InMemorySubscriber[] subscribers = new InMemorySubscriber[0];
+
+    InMemorySubscription(String topic, String name, SubscriptionType type) {
+        this.topic = topic;
+        this.name = name;
+        this.type = type;
+    }
+
+    SubscriptionType getType() {
+        return type;
+    }
+
+    void route(InMemoryMessage message) {
+        InMemorySubscriber subscriber = select(subscribers, message);
+        if (subscriber != null) {
+            subscriber.enqueue(message);
+            return;
+        }
+        backlog.add(message);
+        if (subscribers.length > 0) {   // a subscriber has been added in the meantime
+            redistributeBacklog();
+        }
+    }
+
+    synchronized void addSubscriber(InMemorySubscriber subscriber) {
+        InMemorySubscriber[] newSubscribers = Arrays.copyOf(subscribers, subscribers.length + 1);
+        newSubscribers[newSubscribers.length - 1] = subscriber;
+        subscribers = newSubscribers;
+        redistributeBacklog();
+    }
+
+    synchronized void removeSubscriber(InMemorySubscriber subscriber) {
+        subscribers = Arrays.stream(subscribers).filter(s -> s != subscriber).toArray(InMemorySubscriber[]::new);
+    }
+
+    private void redistributeBacklog() {
+        InMemoryMessage message;
+        while (subscribers.length > 0 && (message = backlog.poll()) != null) {
+            route(message);
+        }
+    }
+
+    private InMemorySubscriber select(InMemorySubscriber[] candidates, InMemoryMessage message) {
+        if (candidates.length == 0) {
+            return null;
+        }
+        switch (type) {
+            case FAILOVER:
+                return candidates[0];   // the other subscribers are on standby
+            case KEY_SHARED:
+                if (message.getKey() != null) {
+                    return candidates[(message.getKey().hashCode() & Integer.MAX_VALUE) % candidates.length];
+                }
+                // a message without key can be dispatched to any subscriber
+            case SHARED:
+            default:
+                return candidates[(roundRobin.getAndIncrement() & Integer.MAX_VALUE) % candidates.length];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return topic + "/" + name;
+    }
+}
@@ -0,0 +1,41 @@
+package fr.volkaert.event_broker.transport.in_memory;
+
+import fr.volkaert.event_broker.transport.SubscriptionType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+class InMemoryTopic {
+
+    private final String name;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, InMemorySubscription> subscriptions = new ConcurrentHashMap<>();
+
+    InMemoryTopic(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // Like Pulsar, a subscription is durable: it keeps receiving the messages while it has no subscriber
+    InMemorySubscription getOrCreateSubscription(String subscriptionName, SubscriptionType type) {
+        InMemorySubscription subscription = subscriptions.computeIfAbsent(subscriptionName, x -> new InMemorySubscription(name, subscriptionName, type));
+        if (subscription.getType() != type) {
+            throw new IllegalStateException(String.format("Subscription %s on topic %s already exists with type %s (requested type is %s)",
+                    subscriptionName, name, subscription.getType(), type));
+        }
+        return subscription;
+    }
+
+    // The same (immutable) message is dispatched to all the subscriptions
+    String publish(InMemoryMessage.Builder builder) {
+        InMemoryMessage message = builder.build(name + ":" + sequence.incrementAndGet());
+        for (InMemorySubscription subscription : subscriptions.values()) {
+            subscription.route(message);
+        }
+        return message.getMessageId();
+    }
+}
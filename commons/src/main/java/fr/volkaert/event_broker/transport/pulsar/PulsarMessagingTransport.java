@@ -0,0 +1,147 @@
+package fr.volkaert.event_broker.transport.pulsar;
+
+import fr.volkaert.event_broker.transport.MessagingTransport;
+import fr.volkaert.event_broker.transport.PublisherSettings;
+import fr.volkaert.event_broker.transport.SubscriberSettings;
+import fr.volkaert.event_broker.transport.TransportMessageListener;
+import fr.volkaert.event_broker.transport.TransportPublisher;
+import fr.volkaert.event_broker.transport.TransportSubscriber;
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.ConsumerBuilder;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+// Messaging transport backed by Apache Pulsar. The messages are sent and received as bytes (Schema.BYTES).
+// The negatively acked messages are redelivered through a retry topic per subscription (see PulsarTransportSubscriber).
+public class PulsarMessagingTransport implements MessagingTransport {
+
+    public static final String NAME = "pulsar";
+
+    private final PulsarClient pulsar;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PulsarMessagingTransport.class);
+
+    public PulsarMessagingTransport(PulsarClient pulsar) {
+        this.pulsar = pulsar;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public CompletableFuture<TransportPublisher> createPublisherAsync(String topic, PublisherSettings settings) {
+        ProducerBuilder<byte[]> builder = pulsar.newProducer(Schema.BYTES)
+                .topic(topic)
+                .enableBatching(true);  // effective only for messages sent without waiting for the previous ones
+        applySettings(builder, topic, settings);
+        return builder.createAsync().thenApply(producer -> new PulsarTransportPublisher(producer, settings));
+    }
+
+    // The retry producer and the retry consumer are created before the consumer of the topic, so a message received by
+    // the consumer of the topic can always be redelivered through the retry topic (see PulsarTransportSubscriber)
+    @Override
+    public CompletableFuture<TransportSubscriber> subscribeAsync(SubscriberSettings settings, TransportMessageListener listener) {
+        PulsarTransportSubscriber subscriber = new PulsarTransportSubscriber(settings);
+        String retryTopic = PulsarTransportSubscriber.getRetryTopic(settings);
+        return pulsar.newProducer(Schema.BYTES)
+                .topic(retryTopic)
+                .enableBatching(false)  // the messages are delayed one by one
+                .createAsync()
+                .thenCompose(retryProducer -> {
+                    subscriber.bindRetryProducer(retryProducer);
+                    return newConsumer(retryTopic, settings.getSubscriptionName(), SubscriptionType.Shared)
+                            .messageListener((consumer, message) -> {
+                                subscriber.bindRetryConsumer(consumer);
+                                listener.onMessage(subscriber, subscriber.wrap(consumer, message));
+                            })
+                            .subscribeAsync();
+                })
+                .thenCompose(retryConsumer -> {
+                    subscriber.bindRetryConsumer(retryConsumer);
+                    return newConsumer(settings.getTopic(), settings.getSubscriptionName(), toPulsarSubscriptionType(settings))
+                            .messageListener((consumer, message) -> {
+                                subscriber.bindConsumer(consumer);
+                                listener.onMessage(subscriber, subscriber.wrap(consumer, message));
+                            })
+                            .subscribeAsync();
+                })
+                .handle((consumer, throwable) -> {
+                    if (throwable != null) {
+                        subscriber.closeAsync();    // the retry producer/consumer may have been created
+                        throw new CompletionException(throwable);
+                    }
+                    subscriber.bindConsumer(consumer);
+                    return subscriber;
+                });
+    }
+
+    private ConsumerBuilder<byte[]> newConsumer(String topic, String subscriptionName, SubscriptionType subscriptionType) {
+        return pulsar.newConsumer(Schema.BYTES)
+                .topic(topic)
+                .subscriptionName(subscriptionName)
+                .subscriptionType(subscriptionType)
+                .negativeAckRedeliveryDelay(PulsarTransportSubscriber.FALLBACK_REDELIVERY_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        try {
+            pulsar.close();
+        } catch (PulsarClientException ex) {
+            LOGGER.error("Error while closing the Pulsar client", ex);
+        }
+    }
+
+    private static void applySettings(ProducerBuilder<byte[]> builder, String topic, PublisherSettings settings) {
+        if (settings == null) {
+            return;
+        }
+        if (settings.getBatchingMaxPublishDelayInMillis() != null && settings.getBatchingMaxPublishDelayInMillis() > 0) {
+            builder.batchingMaxPublishDelay(settings.getBatchingMaxPublishDelayInMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (settings.getBatchingMaxMessages() != null && settings.getBatchingMaxMessages() > 0) {
+            builder.batchingMaxMessages(settings.getBatchingMaxMessages());
+        }
+        if (settings.getCompressionType() != null) {
+            try {
+                builder.compressionType(CompressionType.valueOf(settings.getCompressionType().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                LOGGER.warn("Invalid producer compression type {} for topic {}. Pulsar default is used.",
+                        settings.getCompressionType(), topic);
+            }
+        }
+        if (settings.getMaxPendingMessages() != null && settings.getMaxPendingMessages() > 0) {
+            builder.maxPendingMessages(settings.getMaxPendingMessages());
+        }
+        if (settings.getBlockIfQueueFull() != null) {
+            builder.blockIfQueueFull(settings.getBlockIfQueueFull());
+        }
+        // A batch only contains messages with the same key. Otherwise a batch would be dispatched as a whole to the
+        // Key_Shared consumer of the key of its first message, which would break the order of the other keys
+        builder.batcherBuilder(BatcherBuilder.KEY_BASED);
+    }
+
+    private static SubscriptionType toPulsarSubscriptionType(SubscriberSettings settings) {
+        switch (settings.getSubscriptionType()) {
+            case SHARED:
+                return SubscriptionType.Shared;
+            case KEY_SHARED:
+                return SubscriptionType.Key_Shared;
+            case FAILOVER:
+            default:
+                return SubscriptionType.Failover;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package fr.volkaert.event_broker.transport.pulsar;
+
+import fr.volkaert.event_broker.transport.ReceivedMessage;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+
+import java.util.Map;
+
+class PulsarReceivedMessage implements ReceivedMessage {
+
+    private final Consumer<byte[]> consumer;    // consumer of the topic or of the retry topic (see PulsarTransportSubscriber)
+    private final Message<byte[]> message;
+
+    PulsarReceivedMessage(Consumer<byte[]> consumer, Message<byte[]> message) {
+        this.consumer = consumer;
+        this.message = message;
+    }
+
+    Consumer<byte[]> getConsumer() {
+        return consumer;
+    }
+
+    Message<byte[]> getPulsarMessage() {
+        return message;
+    }
+
+    @Override
+    public String getMessageId() {
+        return message.getMessageId().toString();
+    }
+
+    @Override
+    public byte[] getData() {
+        return message.getData();
+    }
+
+    @Override
+    public String getKey() {
+        return message.hasKey() ? message.getKey() : null;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return message.getProperties();
+    }
+
+    @Override
+    public String getProperty(String name) {
+        return message.getProperty(name);
+    }
+
+    @Override
+    public int getRedeliveryCount() {
+        // The redeliveries through the retry topic are counted in a property of the message (see PulsarTransportSubscriber).
+        // The redelivery count of Pulsar only counts the (fallback) negative acks to Pulsar, and only for some subscription types.
+        return parseRedeliveryCount(message.getProperty(PulsarTransportSubscriber.REDELIVERY_COUNT_PROPERTY)) + message.getRedeliveryCount();
+    }
+
+    @Override
+    public long getPublishTime() {
+        return message.getPublishTime();
+    }
+
+    @Override
+    public String toString() {
+        return getMessageId();
+    }
+
+    private static int parseRedeliveryCount(String redeliveryCount) {
+        if (redeliveryCount == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(redeliveryCount));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package fr.volkaert.event_broker.transport.pulsar;
+
+import fr.volkaert.event_broker.transport.OutgoingMessage;
+import fr.volkaert.event_broker.transport.PublisherSettings;
+import fr.volkaert.event_broker.transport.TransportPublisher;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+
+import java.util.concurrent.CompletableFuture;
+
+class PulsarTransportPublisher implements TransportPublisher {
+
+    private final Producer<byte[]> producer;
+    private final PublisherSettings settings;
+
+    PulsarTransportPublisher(Producer<byte[]> producer, PublisherSettings settings) {
+        this.producer = producer;
+        this.settings = settings;
+    }
+
+    @Override
+    public String getTopic() {
+        return producer.getTopic();
+    }
+
+    @Override
+    public PublisherSettings getSettings() {
+        return settings;
+    }
+
+    @Override
+    public CompletableFuture<String> publishAsync(OutgoingMessage message) {
+        TypedMessageBuilder<byte[]> builder = producer.newMessage().value(message.getData());
+        if (message.getKey() != null) {
+            builder.key(message.getKey());
+        }
+        if (message.getProperties() != null && ! message.getProperties().isEmpty()) {
+            builder.properties(message.getProperties());
+        }
+        return builder.sendAsync().thenApply(Object::toString);
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return producer.flushAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        return producer.closeAsync();
+    }
+}
@@ -0,0 +1,180 @@
+package fr.volkaert.event_broker.transport.pulsar;
+
+import fr.volkaert.event_broker.transport.ReceivedMessage;
+import fr.volkaert.event_broker.transport.SubscriberSettings;
+import fr.volkaert.event_broker.transport.TransportSubscriber;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// A subscriber is made of two Pulsar consumers passing their messages to the same listener:
+// - the consumer of the topic, with the subscription type of the subscription
+// - the consumer of the retry topic of the subscription (see getRetryTopic), always Shared since the broker applies the
+//   delayed delivery only to the Shared subscriptions
+// A message negatively acked by the listener is NOT negatively acked to Pulsar: a copy of the message is published in
+// the retry topic with a delayed delivery (deliverAfter), then the message is acked. So:
+// - the redelivery delay is kept by the broker: nothing is held in memory meanwhile, and the delay survives a restart
+//   of the application or a handoff of the subscription
+// - the other unacked messages are not redelivered (in the Pulsar 2.6 client, a negative ack on a Failover consumer
+//   redelivers ALL the unacked messages of the consumer)
+// - the redelivery count is carried by the copy (see REDELIVERY_COUNT_PROPERTY), so it is accurate whatever the
+//   subscription type
+// Pay attention: the delayed delivery must be enabled on the broker (delayedDeliveryEnabled, true by default), and the
+// order of the messages is not kept by a redelivery.
+class PulsarTransportSubscriber implements TransportSubscriber {
+
+    static final String REDELIVERY_COUNT_PROPERTY = "transport-redelivery-count";
+
+    // Redelivery delay of the Pulsar consumers, only used if a message cannot be published in the retry topic
+    static final long FALLBACK_REDELIVERY_DELAY_IN_MILLIS = 100;
+
+    private final SubscriberSettings settings;
+    private volatile Consumer<byte[]> consumer;
+    private volatile Consumer<byte[]> retryConsumer;
+    private volatile Producer<byte[]> retryProducer;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PulsarTransportSubscriber.class);
+
+    PulsarTransportSubscriber(SubscriberSettings settings) {
+        this.settings = settings;
+    }
+
+    // One retry topic per subscription (like the DLQ topics, the suffix AppRetry avoids a conflict with the native retry
+    // topics of Pulsar)
+    static String getRetryTopic(SubscriberSettings settings) {
+        return settings.getTopic() + "_" + settings.getSubscriptionName() + "_AppRetry";
+    }
+
+    void bindRetryProducer(Producer<byte[]> retryProducer) {
+        this.retryProducer = retryProducer;
+    }
+
+    // Messages may be received before the subscription completes, so the consumers are bound by their first message too
+    void bindRetryConsumer(Consumer<byte[]> retryConsumer) {
+        if (this.retryConsumer == null) {
+            this.retryConsumer = retryConsumer;
+        }
+    }
+
+    void bindConsumer(Consumer<byte[]> consumer) {
+        if (this.consumer == null) {
+            this.consumer = consumer;
+        }
+    }
+
+    PulsarReceivedMessage wrap(Consumer<byte[]> consumer, Message<byte[]> message) {
+        return new PulsarReceivedMessage(consumer, message);
+    }
+
+    @Override
+    public String getTopic() {
+        return settings.getTopic();
+    }
+
+    @Override
+    public String getSubscriptionName() {
+        return settings.getSubscriptionName();
+    }
+
+    @Override
+    public void acknowledge(ReceivedMessage message) {
+        PulsarReceivedMessage receivedMessage = (PulsarReceivedMessage) message;
+        Message<byte[]> pulsarMessage = receivedMessage.getPulsarMessage();
+        receivedMessage.getConsumer().acknowledgeAsync(pulsarMessage).whenComplete((x, throwable) -> {
+            if (throwable != null) {
+                LOGGER.error("Error while acknowledging Pulsar message {}", pulsarMessage.getMessageId(), throwable);
+            }
+        });
+    }
+
+    @Override
+    public void negativeAcknowledge(ReceivedMessage message) {
+        negativeAcknowledge(message, settings.getDefaultRedeliveryDelayInMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void negativeAcknowledge(ReceivedMessage message, long delay, TimeUnit unit) {
+        redeliver(message, delay, unit, message.getRedeliveryCount() + 1);
+    }
+
+    @Override
+    public void postpone(ReceivedMessage message, long delay, TimeUnit unit) {
+        redeliver(message, delay, unit, message.getRedeliveryCount());
+    }
+
+    private void redeliver(ReceivedMessage message, long delay, TimeUnit unit, int redeliveryCount) {
+        PulsarReceivedMessage receivedMessage = (PulsarReceivedMessage) message;
+        Message<byte[]> pulsarMessage = receivedMessage.getPulsarMessage();
+        Producer<byte[]> producer = retryProducer;
+        if (producer == null) {     // should never happen (the retry producer is created before the consumers)
+            receivedMessage.getConsumer().negativeAcknowledge(pulsarMessage);
+            return;
+        }
+
+        Map<String, String> properties = new HashMap<>(pulsarMessage.getProperties());
+        properties.put(REDELIVERY_COUNT_PROPERTY, String.valueOf(redeliveryCount));
+        TypedMessageBuilder<byte[]> builder = producer.newMessage().value(pulsarMessage.getData()).properties(properties);
+        if (pulsarMessage.hasKey()) {
+            builder.key(pulsarMessage.getKey());
+        }
+        if (delay > 0) {
+            builder.deliverAfter(delay, unit);
+        }
+        builder.sendAsync().whenComplete((retryMessageId, throwable) -> {
+            if (throwable != null) {
+                // The message will be redelivered soon (and, for a Failover consumer, with the other unacked messages)
+                LOGGER.error("Error while publishing Pulsar message {} in the retry topic {}. The message is negatively acked instead.",
+                        pulsarMessage.getMessageId(), producer.getTopic(), throwable);
+                receivedMessage.getConsumer().negativeAcknowledge(pulsarMessage);
+                return;
+            }
+            LOGGER.debug("Pulsar message {} published in the retry topic {} as {} (delivered in {} ms)",
+                    pulsarMessage.getMessageId(), producer.getTopic(), retryMessageId, unit.toMillis(delay));
+            acknowledge(receivedMessage);
+        });
+    }
+
+    @Override
+    public void pause() {
+        if (consumer != null) {
+            consumer.pause();
+        }
+        if (retryConsumer != null) {
+            retryConsumer.pause();
+        }
+    }
+
+    @Override
+    public void resume() {
+        if (consumer != null) {
+            consumer.resume();
+        }
+        if (retryConsumer != null) {
+            retryConsumer.resume();
+        }
+    }
+
+    // The consumers are closed before the retry producer, which may still be used by the redeliveries in progress
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        List<CompletableFuture<Void>> consumersClosed = new ArrayList<>();
+        if (consumer != null) {
+            consumersClosed.add(consumer.closeAsync());
+        }
+        if (retryConsumer != null) {
+            consumersClosed.add(retryConsumer.closeAsync());
+        }
+        return CompletableFuture.allOf(consumersClosed.toArray(new CompletableFuture[0]))
+                .thenCompose(x -> retryProducer != null ? retryProducer.closeAsync() : CompletableFuture.completedFuture(null));
+    }
+}
@@ -0,0 +1,132 @@
+package fr.volkaert.event_broker.util;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of resources (typically Pulsar producers and consumers) that are expensive to create and shared by
+ * many threads.
+ * <ul>
+ *     <li>reading an existing resource is lock-free (a single ConcurrentHashMap.get)</li>
+ *     <li>a resource is created at most once at a time for a given key (single-flight): concurrent callers share the
+ *     same future</li>
+ *     <li>a failed creation is not cached forever: the next creation is allowed after an exponential backoff, and
+ *     in the meantime callers fail fast</li>
+ * </ul>
+ * The factory is never called while holding a lock of the map.
+ */
+public class ConcurrentResourceRegistry<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long minBackoffInMillis;
+    private final long maxBackoffInMillis;
+
+    public ConcurrentResourceRegistry(Duration minBackoff, Duration maxBackoff) {
+        this.minBackoffInMillis = Math.max(0, minBackoff.toMillis());
+        this.maxBackoffInMillis = Math.max(this.minBackoffInMillis, maxBackoff.toMillis());
+    }
+
+    // The returned future is completed exceptionally if the creation failed (or previously failed and the
+    // backoff has not expired yet)
+    public CompletableFuture<V> getAsync(K key, Function<K, CompletableFuture<V>> factory) {
+        while (true) {
+            Entry<V> current = entries.get(key);
+            if (current != null && ! current.canBeRetried(System.currentTimeMillis())) {
+                return current.future;  // created, being created, or failed but still in backoff
+            }
+
+            Entry<V> creating = new Entry<>(new CompletableFuture<>(), current != null ? current.failureCount : 0, 0);
+            boolean won = current == null ? entries.putIfAbsent(key, creating) == null : entries.replace(key, current, creating);
+            if (! won) {
+                continue;   // another thread is creating (or has created) the resource, so use its entry
+            }
+
+            CompletableFuture<V> creation;
+            try {
+                creation = factory.apply(key);
+            } catch (Exception ex) {
+                creation = CompletableFuture.failedFuture(ex);
+            }
+            creation.whenComplete((resource, throwable) -> {
+                if (throwable == null && resource != null) {
+                    creating.future.complete(resource);
+                    return;
+                }
+                int failureCount = creating.failureCount + 1;
+                long retryNotBefore = System.currentTimeMillis() + computeBackoffInMillis(failureCount);
+                // The entry is replaced BEFORE the future is completed so the callers woken up see the backoff entry
+                entries.replace(key, creating, new Entry<>(creating.future, failureCount, retryNotBefore));
+                creating.future.completeExceptionally(throwable != null ? throwable :
+                        new IllegalStateException("The factory returned a null resource for key " + key));
+            });
+            return creating.future;
+        }
+    }
+
+    // Returns null if the resource does not exist or is not created yet (never waits)
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || ! entry.future.isDone() || entry.future.isCompletedExceptionally()) {
+            return null;
+        }
+        return entry.future.join();
+    }
+
+    // Returns the removed resource (or null if it was not created yet). Closing the resource is up to the caller.
+    public V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry == null || ! entry.future.isDone() || entry.future.isCompletedExceptionally()) {
+            return null;
+        }
+        return entry.future.join();
+    }
+
+    // Removes the entry only if it still holds the given resource (useful to replace a resource without racing)
+    public boolean remove(K key, V resource) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || ! entry.future.isDone() || entry.future.isCompletedExceptionally()
+                || entry.future.join() != resource) {
+            return false;
+        }
+        return entries.remove(key, entry);
+    }
+
+    // Snapshot of the successfully created resources
+    public Collection<V> values() {
+        return entries.values().stream()
+                .map(entry -> entry.future)
+                .filter(future -> future.isDone() && ! future.isCompletedExceptionally())
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    private long computeBackoffInMillis(int failureCount) {
+        long backoff = minBackoffInMillis;
+        for (int i = 1; i < failureCount && backoff < maxBackoffInMillis; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoffInMillis);
+    }
+
+    // Immutable, so it can be read without lock. Equality is identity (needed by ConcurrentHashMap.replace/remove).
+    private static class Entry<V> {
+        final CompletableFuture<V> future;
+        final int failureCount;
+        final long retryNotBefore; // epoch millis, meaningful only if the future failed
+
+        Entry(CompletableFuture<V> future, int failureCount, long retryNotBefore) {
+            this.future = future;
+            this.failureCount = failureCount;
+            this.retryNotBefore = retryNotBefore;
+        }
+
+        boolean canBeRetried(long now) {
+            return future.isCompletedExceptionally() && now >= retryNotBefore;
+        }
+    }
+}
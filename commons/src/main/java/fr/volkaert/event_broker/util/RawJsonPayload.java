@@ -0,0 +1,51 @@
+package fr.volkaert.event_broker.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+
+// Payload of an event kept as raw JSON text (see RawJsonPayloadDeserializer).
+// It is written as is (without any parsing) each time the event is serialized (to Pulsar, to the Subscription Adapter,
+// to the webhook...), so the payload is never converted to maps and lists by the broker.
+public final class RawJsonPayload implements JsonSerializable {
+
+    private final String json;
+
+    public RawJsonPayload(String json) {
+        this.json = json;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(json);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return json.equals(((RawJsonPayload) o).json);
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
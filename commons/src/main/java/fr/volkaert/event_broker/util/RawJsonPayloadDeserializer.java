@@ -0,0 +1,28 @@
+package fr.volkaert.event_broker.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+// Copies the payload of an event as compact raw JSON text instead of building maps and lists
+// (only the envelope of the event is really deserialized).
+public class RawJsonPayloadDeserializer extends JsonDeserializer<Object> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Override
+    public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+        SegmentedStringWriter writer = new SegmentedStringWriter(new BufferRecycler());
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(writer)) {
+            gen.copyCurrentStructure(p);
+        }
+        return new RawJsonPayload(writer.getAndClear());
+    }
+}
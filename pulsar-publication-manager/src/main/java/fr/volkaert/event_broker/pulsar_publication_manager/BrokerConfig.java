@@ -10,6 +10,8 @@ import org.springframework.context.annotation.Configuration;
 public class BrokerConfig {
 
     private String catalogUrl;
+
+    private String transport = "pulsar";    // "pulsar" or "in-memory" (see MessagingTransport)
     private String pulsarServiceUrl;
 
     private String componentTypeName;   // Useful for metrics (to group them by component type)
@@ -17,4 +19,25 @@ public class BrokerConfig {
 
     private long defaultTimeToLiveInSeconds;
     private long maxTimeToLiveInSeconds;
+
+    // If true, the servlet thread is released while Pulsar acknowledges the event (see PublicationManagerController)
+    private boolean asynchronousPublicationEnabled = true;
+
+    private int maxEventsPerBatch;  // max number of events accepted by the /events/batch endpoint
+
+    // After a failed creation of a Pulsar producer, the next creation is attempted after a backoff (doubled at each failure)
+    private long minBackoffInMillisForPulsarProducerCreation;
+    private long maxBackoffInMillisForPulsarProducerCreation;
+
+    // If true, the Pulsar producers of the active publications are created at startup (readiness is UP after the warm-up)
+    private boolean warmUpEnabled = true;
+    private long warmUpTimeoutInSeconds;
+
+    // If true, an event published twice (same publication code and same Idempotency-Key header) within the window is not
+    // sent again to Pulsar (see PublicationDeduplicationIndex)
+    private boolean idempotentPublicationEnabled = false;
+    private long idempotencyWindowInSeconds;
+    private int idempotencyMaxEntries;
+    // If true, an event without Idempotency-Key header is deduplicated on its businessId AND the hash of its payload
+    private boolean idempotencyKeyFromBusinessIdEnabled = false;
 }
@@ -0,0 +1,87 @@
+package fr.volkaert.event_broker.pulsar_publication_manager;
+
+import fr.volkaert.event_broker.model.InflightEvent;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Index of the publications of the last window (typically a few minutes), used to detect the events published twice
+// (for example because the Publication Gateway retried a POST whose response was lost).
+// The index is bounded both in time (window) and in size (the oldest entries are evicted first).
+// It is local to an instance of the Publication Manager, so a duplicate routed to another instance is not detected.
+public class PublicationDeduplicationIndex {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<KeyAndEntry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final long windowInMillis;
+    private final int maxEntries;
+
+    public PublicationDeduplicationIndex(long windowInSeconds, int maxEntries) {
+        this.windowInMillis = windowInSeconds * 1000;
+        this.maxEntries = maxEntries;
+    }
+
+    // Returns null if the key is not known (in that case, the given publication is registered for the key),
+    // otherwise returns the publication (maybe still in progress) previously registered for the key
+    public CompletableFuture<InflightEvent> registerOrGetOriginal(String key, CompletableFuture<InflightEvent> publication) {
+        long now = System.currentTimeMillis();
+        Entry newEntry = new Entry(publication, now + windowInMillis);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, newEntry);
+            if (existing == null || (existing.expirationTime <= now && entries.replace(key, existing, newEntry))) {
+                insertionOrder.add(new KeyAndEntry(key, newEntry));
+                evictExpiredOrOldestEntries(now);
+                return null;
+            }
+            if (existing.expirationTime > now) {
+                return existing.publication;
+            }
+            // The expired entry has been replaced by another thread in the meantime, so try again
+        }
+    }
+
+    // Called when the publication failed, so the publisher can retry it
+    public void unregister(String key, CompletableFuture<InflightEvent> publication) {
+        Entry existing = entries.get(key);
+        if (existing != null && existing.publication == publication) {
+            entries.remove(key, existing);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evictExpiredOrOldestEntries(long now) {
+        KeyAndEntry oldest;
+        while ((oldest = insertionOrder.peek()) != null &&
+                (oldest.entry.expirationTime <= now || entries.size() > maxEntries)) {
+            if (insertionOrder.remove(oldest)) {
+                entries.remove(oldest.key, oldest.entry);   // no-op if the entry has already been replaced or removed
+            }
+        }
+    }
+
+    private static class Entry {
+        final CompletableFuture<InflightEvent> publication;
+        final long expirationTime;
+
+        Entry(CompletableFuture<InflightEvent> publication, long expirationTime) {
+            this.publication = publication;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private static class KeyAndEntry {
+        final String key;
+        final Entry entry;
+
+        KeyAndEntry(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
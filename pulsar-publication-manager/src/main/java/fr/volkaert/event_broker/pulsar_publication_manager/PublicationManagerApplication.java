@@ -1,5 +1,8 @@
 package fr.volkaert.event_broker.pulsar_publication_manager;
 
+import fr.volkaert.event_broker.transport.MessagingTransport;
+import fr.volkaert.event_broker.transport.in_memory.InMemoryMessagingTransport;
+import fr.volkaert.event_broker.transport.pulsar.PulsarMessagingTransport;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.slf4j.Logger;
@@ -8,8 +11,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.event.EventListener;
 
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class })
 @ComponentScan("fr.volkaert")  // Required because some components/services are not in the same project !
@@ -18,17 +23,27 @@ public class PublicationManagerApplication {
     @Autowired
     BrokerConfig config;
 
+    @Autowired
+    PublicationManagerService publicationManagerService;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PublicationManagerApplication.class);
 
     public static void main(String[] args) {
         SpringApplication.run(PublicationManagerApplication.class, args);
     }
 
+    @EventListener
+    public void handleApplicationReadyEvent(ApplicationReadyEvent applicationReadyEvent) { publicationManagerService.warmUp(); }
+
     @Bean
-    PulsarClient createPulsarClient() throws PulsarClientException {
+    MessagingTransport createMessagingTransport() throws PulsarClientException {
+        if (InMemoryMessagingTransport.NAME.equalsIgnoreCase(config.getTransport())) {
+            LOGGER.warn("Using the in-memory messaging transport: the events are NOT persisted (use it only for tests and benchmarks)");
+            return new InMemoryMessagingTransport();
+        }
         PulsarClient pulsarClient = PulsarClient.builder()
                 .serviceUrl(config.getPulsarServiceUrl())
                 .build();
-        return pulsarClient;
+        return new PulsarMessagingTransport(pulsarClient);
     }
 }
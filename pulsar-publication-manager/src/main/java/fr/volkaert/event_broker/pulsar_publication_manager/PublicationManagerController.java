@@ -10,9 +10,14 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @RestController
 @RequestMapping("/events")
 public class PublicationManagerController {
@@ -25,18 +30,58 @@ public class PublicationManagerController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PublicationManagerController.class);
 
+    // When asynchronous publication is enabled, the servlet thread is released as soon as the event has been handed
+    // over to Pulsar, and the response is written when Pulsar acknowledges (or rejects) the event.
     @PostMapping
-    public ResponseEntity<Object> publish(@RequestBody InflightEvent inflightEvent) {
+    public CompletableFuture<ResponseEntity<Object>> publish(@RequestBody InflightEvent inflightEvent,
+                                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (! config.isAsynchronousPublicationEnabled()) {
+            return CompletableFuture.completedFuture(publishSynchronously(inflightEvent, idempotencyKey));
+        }
+        try {
+            return publicationManagerService.publishAsync(inflightEvent, idempotencyKey)
+                    .thenApply(publishedEvent -> new ResponseEntity<Object>(publishedEvent, HttpStatus.CREATED))
+                    .exceptionally(this::toErrorResponse);
+        } catch (Exception ex) {
+            return CompletableFuture.completedFuture(toErrorResponse(ex));
+        }
+    }
+
+    // Returns 200 OK with one PublicationResult per event (in the same order as the events of the request)
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<Object>> publishBatch(@RequestBody List<InflightEvent> inflightEvents,
+                                                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        try {
+            return publicationManagerService.publishBatchAsync(inflightEvents, idempotencyKey)
+                    .thenApply(results -> new ResponseEntity<Object>(results, HttpStatus.OK))
+                    .exceptionally(this::toErrorResponse);
+        } catch (Exception ex) {
+            return CompletableFuture.completedFuture(toErrorResponse(ex));
+        }
+    }
+
+    private ResponseEntity<Object> publishSynchronously(InflightEvent inflightEvent, String idempotencyKey) {
         try {
-            inflightEvent = publicationManagerService.publish(inflightEvent);
+            inflightEvent = publicationManagerService.publish(inflightEvent, idempotencyKey);
             return new ResponseEntity<Object>(inflightEvent, HttpStatus.CREATED);
-        } catch (BrokerException ex) {
+        } catch (Exception ex) {
+            return toErrorResponse(ex);
+        }
+    }
+
+    private ResponseEntity<Object> toErrorResponse(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof BrokerException) {
             // If error is a BrokerException, the error should already have been logged
             //LOGGER.error(ex.getMessage(), ex);
+            BrokerException ex = (BrokerException) cause;
             return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), ex.getHttpStatus());
-        } catch (Exception ex) {
-            LOGGER.error(ex.getMessage(), ex);
-            return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), HttpStatus.INTERNAL_SERVER_ERROR);
         }
+        Exception ex = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+        LOGGER.error(ex.getMessage(), ex);
+        return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 }
@@ -1,27 +1,48 @@
 package fr.volkaert.event_broker.pulsar_publication_manager;
 
 import fr.volkaert.event_broker.catalog_client.CatalogClient;
+import fr.volkaert.event_broker.encoding.InflightEventCodec;
+import fr.volkaert.event_broker.encoding.InflightEventCodecs;
+import fr.volkaert.event_broker.encoding.InflightEventHeaders;
 import fr.volkaert.event_broker.error.BrokerException;
 import fr.volkaert.event_broker.model.EventType;
 import fr.volkaert.event_broker.model.InflightEvent;
 import fr.volkaert.event_broker.model.Publication;
+import fr.volkaert.event_broker.model.PublicationResult;
 import fr.volkaert.event_broker.telemetry.TelemetryService;
-import org.apache.pulsar.client.api.Producer;
-import org.apache.pulsar.client.api.PulsarClient;
-import org.apache.pulsar.client.api.PulsarClientException;
-import org.apache.pulsar.client.api.Schema;
-import org.apache.pulsar.client.api.schema.SchemaDefinition;
-import org.apache.pulsar.client.internal.DefaultImplementation;
+import fr.volkaert.event_broker.transport.MessagingTransport;
+import fr.volkaert.event_broker.transport.OutgoingMessage;
+import fr.volkaert.event_broker.transport.PublisherSettings;
+import fr.volkaert.event_broker.transport.TransportPublisher;
+import fr.volkaert.event_broker.util.ConcurrentResourceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class PublicationManagerService {
@@ -33,18 +54,171 @@ public class PublicationManagerService {
     CatalogClient catalog;
 
     @Autowired
-    PulsarClient pulsar;
+    MessagingTransport transport;
+
+    ConcurrentResourceRegistry<String, TransportPublisher> eventTypeCodeToPublisherRegistry;
+
+    PublicationDeduplicationIndex deduplicationIndex;   // null if idempotent publication is disabled
 
-    Map<String, Producer> eventTypeCodeToPulsarProducerMap = new HashMap<>();
+    private final AtomicBoolean warmUpFinished = new AtomicBoolean(false);
 
     @Autowired
     TelemetryService telemetryService;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PublicationManagerService.class);
 
-    public InflightEvent publish(InflightEvent inflightEvent) throws PulsarClientException {
+    @PostConstruct
+    public void init() {
+        eventTypeCodeToPublisherRegistry = new ConcurrentResourceRegistry<>(
+                Duration.ofMillis(config.getMinBackoffInMillisForPulsarProducerCreation()),
+                Duration.ofMillis(config.getMaxBackoffInMillisForPulsarProducerCreation()));
+        if (config.isIdempotentPublicationEnabled()) {
+            deduplicationIndex = new PublicationDeduplicationIndex(
+                    config.getIdempotencyWindowInSeconds(), config.getIdempotencyMaxEntries());
+        }
+    }
+
+    // Creates in parallel the Pulsar producers of the event types of all active publications, so the first events
+    // published after a (re)deployment do not pay for the creation of the producers (topic lookup, schema...).
+    // This operation does not block: see isWarmUpFinished().
+    // *** NEVER LET AN EXCEPTION BE RAISED/THROWN BY THIS OPERATION !!! ***
+    public void warmUp() {
+        if (! config.isWarmUpEnabled()) {
+            warmUpFinished.set(true);
+            return;
+        }
+        Instant warmUpStart = Instant.now();
+        AtomicInteger createdCount = new AtomicInteger();
+        AtomicInteger failedCount = new AtomicInteger();
+        CompletableFuture.runAsync(() -> {
+            LOGGER.info("Loading publications from the catalog to warm up the Pulsar producers...");
+            List<Publication> publications = catalog.getPublications();
+            List<String> eventTypeCodes = publications == null ? new ArrayList<>() : publications.stream()
+                    .filter(Publication::isActive)
+                    .map(Publication::getEventTypeCode)
+                    .distinct()
+                    .collect(Collectors.toList());
+            LOGGER.info("Warming up the Pulsar producers for {} event types...", eventTypeCodes.size());
+
+            List<CompletableFuture<?>> producerFutures = new ArrayList<>();
+            for (String eventTypeCode : eventTypeCodes) {
+                try {
+                    EventType eventType = catalog.getEventType(eventTypeCode);
+                    if (eventType == null || ! eventType.isActive()) {
+                        continue;
+                    }
+                    producerFutures.add(getPublisherAsync(eventType).handle((publisher, throwable) ->
+                            // No need to log the error since it has already been logged in createPublisherAsync()
+                            (throwable == null ? createdCount : failedCount).incrementAndGet()));
+                } catch (Exception ex) {  // if there is an issue with an event type, continue with the others...
+                    LOGGER.error("Error while warming up the Pulsar producer for eventTypeCode {}", eventTypeCode, ex);
+                    failedCount.incrementAndGet();
+                }
+            }
+            CompletableFuture.allOf(producerFutures.toArray(new CompletableFuture[0])).join();
+        })
+        .orTimeout(config.getWarmUpTimeoutInSeconds(), TimeUnit.SECONDS)
+        .whenComplete((x, throwable) -> {
+            boolean timedOut = throwable != null && unwrap(throwable) instanceof TimeoutException;
+            if (throwable != null && ! timedOut) {
+                LOGGER.error("Error while warming up the Pulsar producers", throwable);
+            }
+            telemetryService.pulsarWarmUpFinished("producers", createdCount.get(), failedCount.get(), timedOut, warmUpStart);
+            warmUpFinished.set(true);
+        });
+    }
+
+    // Used by the readiness probe. True once the warm-up has finished, failed or timed out.
+    public boolean isWarmUpFinished() {
+        return warmUpFinished.get();
+    }
+
+    // This operation blocks the calling thread until Pulsar has acknowledged (or rejected) the event
+    public InflightEvent publish(InflightEvent inflightEvent, String idempotencyKey) {
+        try {
+            return publishAsync(inflightEvent, idempotencyKey).get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof BrokerException) {
+                throw (BrokerException) ex.getCause();
+            }
+            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, "Interrupted while waiting for the event publication", ex);
+        }
+    }
+
+    // The returned future is completed (on a thread of the messaging transport) once the event is stored by the transport.
+    // If the event is rejected (missing/invalid/inactive publication...), a BrokerException is thrown immediately.
+    // If the send to Pulsar fails, the returned future is completed exceptionally with a BrokerException.
+    // If idempotent publication is enabled, the idempotencyKey identifies the event for its publication: a duplicate is
+    // not sent again to Pulsar and the id of the original event is returned. Without idempotencyKey (neither as parameter
+    // nor in the event), the event is not deduplicated, unless the deduplication on the businessId and the payload is
+    // enabled (see getDeduplicationKey).
+    public CompletableFuture<InflightEvent> publishAsync(InflightEvent inflightEvent, String idempotencyKey) {
+        return publishAsync(inflightEvent, idempotencyKey, catalog::getPublication, catalog::getEventType);
+    }
+
+    // The events of the batch are validated against the catalog once per distinct publication code, then they are
+    // all handed over to Pulsar before waiting for any acknowledgment (so the producer can batch them).
+    // The returned future is never completed exceptionally: a failure is reported in the result of the event.
+    // If idempotent publication is enabled, each event is deduplicated on its own idempotencyKey or, if it has none, on
+    // the idempotencyKey of the batch (may be null) followed by the index of the event in the batch. So a retry of the
+    // whole batch (for instance by the Publication Gateway) does not publish again the events already sent to Pulsar.
+    public CompletableFuture<List<PublicationResult>> publishBatchAsync(List<InflightEvent> inflightEvents, String idempotencyKey) {
+        if (inflightEvents == null || inflightEvents.isEmpty()) {
+            throw new BrokerException(HttpStatus.BAD_REQUEST, "The batch of events is empty");
+        }
+        if (inflightEvents.size() > config.getMaxEventsPerBatch()) {
+            String msg = String.format("The batch contains %d events but the max is %d",
+                    inflightEvents.size(), config.getMaxEventsPerBatch());
+            LOGGER.error(msg);
+            throw new BrokerException(HttpStatus.BAD_REQUEST, msg);
+        }
+
+        Map<String, Publication> publicationsOfTheBatch = new HashMap<>();
+        Map<String, EventType> eventTypesOfTheBatch = new HashMap<>();
+        Function<String, Publication> publicationLookup = code -> publicationsOfTheBatch.computeIfAbsent(code, catalog::getPublication);
+        Function<String, EventType> eventTypeLookup = code -> eventTypesOfTheBatch.computeIfAbsent(code, catalog::getEventType);
+
+        List<CompletableFuture<PublicationResult>> resultFutures = new ArrayList<>(inflightEvents.size());
+        boolean batchHasIdempotencyKey = idempotencyKey != null && ! idempotencyKey.trim().isEmpty();
+        for (int i = 0; i < inflightEvents.size(); i++) {
+            InflightEvent inflightEvent = inflightEvents.get(i);
+            String eventIdempotencyKey = batchHasIdempotencyKey ? idempotencyKey + "#" + i : null;
+            CompletableFuture<InflightEvent> publicationFuture;
+            try {
+                publicationFuture = publishAsync(inflightEvent, eventIdempotencyKey, publicationLookup, eventTypeLookup);
+            } catch (Exception ex) {
+                publicationFuture = CompletableFuture.failedFuture(ex);
+            }
+            resultFutures.add(publicationFuture.handle((publishedEvent, throwable) -> {
+                if (throwable != null) {
+                    Exception ex = unwrap(throwable);
+                    int status = ex instanceof BrokerException ?
+                            ((BrokerException) ex).getHttpStatusCode() : HttpStatus.INTERNAL_SERVER_ERROR.value();
+                    return PublicationResult.failed(status, ex.getMessage());
+                }
+                publishedEvent.setPayload(null);    // the payload has already been sent to Pulsar, no need to return it
+                return PublicationResult.succeeded(publishedEvent);
+            }));
+        }
+
+        return CompletableFuture.allOf(resultFutures.toArray(new CompletableFuture[0]))
+                .thenApply(x -> resultFutures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    private CompletableFuture<InflightEvent> publishAsync(InflightEvent inflightEvent, String idempotencyKey,
+                                                          Function<String, Publication> publicationLookup,
+                                                          Function<String, EventType> eventTypeLookup) {
         Instant publicationStart = Instant.now();
 
+        // The key of the event itself prevails, and it must not be sent to Pulsar
+        if (inflightEvent.getIdempotencyKey() != null && ! inflightEvent.getIdempotencyKey().trim().isEmpty()) {
+            idempotencyKey = inflightEvent.getIdempotencyKey();
+        }
+        inflightEvent.setIdempotencyKey(null);
+
         telemetryService.eventPublicationRequested(inflightEvent);
 
         setTimeToLiveInSecondsIfMissingOrInvalid(inflightEvent);
@@ -53,34 +227,120 @@ public class PublicationManagerService {
         inflightEvent.setCreationDate(publicationStart);
         inflightEvent.setExpirationDate(publicationStart.plusSeconds(inflightEvent.getTimeToLiveInSeconds()));
 
-        boolean shouldContinue = checkConditionsForEventPublicationAreMetOrReject(inflightEvent);
+        boolean shouldContinue = checkConditionsForEventPublicationAreMetOrReject(inflightEvent, publicationLookup, eventTypeLookup);
         if (! shouldContinue) {
-            return inflightEvent; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+            return CompletableFuture.completedFuture(inflightEvent); // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+        }
+
+        String deduplicationKey = getDeduplicationKey(inflightEvent, idempotencyKey);
+        CompletableFuture<InflightEvent> registeredPublication = new CompletableFuture<>();
+        if (deduplicationKey != null) {
+            CompletableFuture<InflightEvent> originalPublication = deduplicationIndex.registerOrGetOriginal(deduplicationKey, registeredPublication);
+            if (originalPublication != null) {
+                telemetryService.eventPublicationDeduplicated(inflightEvent);
+                return originalPublication.thenApply(originalEvent -> {
+                    inflightEvent.setId(originalEvent.getId());
+                    inflightEvent.setCreationDate(originalEvent.getCreationDate());
+                    inflightEvent.setExpirationDate(originalEvent.getExpirationDate());
+                    return inflightEvent;
+                }); // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+            }
         }
 
-        telemetryService.eventPublicationAttempted(inflightEvent);
+        // Once registered, the publication must be completed even if an exception is thrown below: otherwise the retries
+        // with the same key would wait for it until the end of the idempotency window
+        CompletableFuture<InflightEvent> publication;
         try {
+            telemetryService.eventPublicationAttempted(inflightEvent);
             String eventTypeCode = inflightEvent.getEventTypeCode();    // filled in checkConditionsForEventPublicationAreMetOrReject
-            Producer<InflightEvent> producer = getPulsarProducer(eventTypeCode);
-            producer.send(inflightEvent);
-            telemetryService.eventPublicationSucceeded(inflightEvent, publicationStart);
-        } catch (Exception ex) {
-            String msg = telemetryService.eventPublicationFailed(inflightEvent, ex, publicationStart);
-            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex);
+            EventType eventType = eventTypeLookup.apply(eventTypeCode);    // already checked in checkConditionsForEventPublicationAreMetOrReject
+            CompletableFuture<String> sendFuture = getPublisherAsync(eventType)
+                    .thenCompose(publisher -> {
+                        InflightEventCodec codec = InflightEventCodecs.forName(eventType.getTopicEncoding());
+                        // The businessId is the key of the message so the Subscription Manager can keep the order of the
+                        // events with the same businessId without decoding them (see DeliveryDispatcher), and the headers
+                        // let it filter the events (channel, expiration...) without decoding them (see InflightEventHeaders)
+                        OutgoingMessage message = new OutgoingMessage(codec.encode(inflightEvent))
+                                .withKey(inflightEvent.getBusinessId())
+                                .withProperty(InflightEventCodec.ENCODING_PROPERTY, codec.getName())
+                                .withProperties(InflightEventHeaders.toProperties(inflightEvent));
+                        return sendAsync(eventType, publisher, message, false);
+                    });
+
+            publication = sendFuture.handle((messageId, throwable) -> {
+                if (throwable != null) {
+                    Exception ex = unwrap(throwable);
+                    String msg = telemetryService.eventPublicationFailed(inflightEvent, ex, publicationStart);
+                    throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex);
+                }
+                telemetryService.eventPublicationSucceeded(inflightEvent, publicationStart);
+                LOGGER.debug("Returning the event {}", inflightEvent);
+                return inflightEvent;
+            });
+        } catch (RuntimeException ex) {
+            if (deduplicationKey != null) {
+                deduplicationIndex.unregister(deduplicationKey, registeredPublication);  // so the publisher can retry
+                registeredPublication.completeExceptionally(ex);
+            }
+            throw ex;
+        }
+
+        if (deduplicationKey != null) {
+            publication.whenComplete((publishedEvent, throwable) -> {
+                if (throwable != null) {
+                    deduplicationIndex.unregister(deduplicationKey, registeredPublication);  // so the publisher can retry
+                    registeredPublication.completeExceptionally(throwable);
+                } else {
+                    // Only the id and dates are kept in the index (not the payload)
+                    InflightEvent originalEvent = new InflightEvent();
+                    originalEvent.setId(publishedEvent.getId());
+                    originalEvent.setCreationDate(publishedEvent.getCreationDate());
+                    originalEvent.setExpirationDate(publishedEvent.getExpirationDate());
+                    registeredPublication.complete(originalEvent);
+                }
+            });
         }
+        return publication;
+    }
 
-        LOGGER.debug("Returning the event {}", inflightEvent);
-        return inflightEvent;
+    // Returns null if the event should not be deduplicated.
+    // A businessId identifies an entity (shared by all the events of this entity), not an event, so it is only used (if
+    // enabled) together with a hash of the payload: otherwise the next events of the entity would be dropped as duplicates.
+    private String getDeduplicationKey(InflightEvent inflightEvent, String idempotencyKey) {
+        if (deduplicationIndex == null) {
+            return null;
+        }
+        if (idempotencyKey != null && ! idempotencyKey.trim().isEmpty()) {
+            return inflightEvent.getPublicationCode() + "/" + idempotencyKey;
+        }
+        String businessId = inflightEvent.getBusinessId();
+        if (! config.isIdempotencyKeyFromBusinessIdEnabled() || businessId == null || businessId.trim().isEmpty()) {
+            return null;
+        }
+        return inflightEvent.getPublicationCode() + "/" + businessId + "/" + hashPayload(inflightEvent.getPayload());
+    }
+
+    // The payload is kept as raw JSON (see RawJsonPayload), so a retry of the publisher gives the same hash
+    private static String hashPayload(Object payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.valueOf(payload).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {   // should never happen (SHA-256 is supported by every JVM)
+            throw new IllegalStateException(ex);
+        }
     }
 
-    private boolean checkConditionsForEventPublicationAreMetOrReject(InflightEvent inflightEvent) {
+    private boolean checkConditionsForEventPublicationAreMetOrReject(InflightEvent inflightEvent,
+                                                                     Function<String, Publication> publicationLookup,
+                                                                     Function<String, EventType> eventTypeLookup) {
         String publicationCode = inflightEvent.getPublicationCode();
         if (publicationCode == null || publicationCode.trim().equals("")) {
             String msg = telemetryService.eventPublicationRejectedDueToMissingPublicationCode(inflightEvent);
             throw new BrokerException(HttpStatus.BAD_REQUEST, msg);
         }
 
-        Publication publication = catalog.getPublication(publicationCode);
+        Publication publication = publicationLookup.apply(publicationCode);
         if (publication == null) {
             String msg = telemetryService.eventPublicationRejectedDueToInvalidPublicationCode(inflightEvent);
             throw new BrokerException(HttpStatus.BAD_REQUEST, msg);
@@ -94,7 +354,7 @@ public class PublicationManagerService {
         String eventTypeCode = publication.getEventTypeCode();
         inflightEvent.setEventTypeCode(eventTypeCode);  // *** CAUTION ***: side effect here !
 
-        EventType eventType = catalog.getEventType(eventTypeCode);
+        EventType eventType = eventTypeLookup.apply(eventTypeCode);
         if (eventType == null) {
             String msg = telemetryService.eventPublicationRejectedDueToInvalidEventTypeCode(inflightEvent);
             throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);   // It's an internal error, not a client error / bad request (the client does not provide the event type code) !
@@ -103,31 +363,86 @@ public class PublicationManagerService {
         return true; // true means the caller should continue its code flow
     }
 
-    private synchronized Producer<InflightEvent> getPulsarProducer(String eventTypeCode) {
-        Producer<InflightEvent> producer = eventTypeCodeToPulsarProducerMap.computeIfAbsent(eventTypeCode, x -> {
-            try {
-                LOGGER.info("Creating Pulsar producer for eventTypeCode {}", eventTypeCode);
-                //Schema<InflightEvent> schema = Schema.JSON(InflightEvent.class);
-                Schema<InflightEvent> schema = DefaultImplementation.newJSONSchema(SchemaDefinition.builder().withJSR310ConversionEnabled(true).withPojo(InflightEvent.class).build());
-                Producer<InflightEvent> p =  pulsar.newProducer(schema)
-                        .topic(eventTypeCode)
-                        .create();
-                if (p != null) {
-                    LOGGER.info("Pulsar producer created for eventTypeCode {}", eventTypeCode);
-                }
-                return p;
-            } catch (Exception ex) {
-                String msg = String.format("Error while creating a Pulsar producer for eventTypeCode %s", eventTypeCode);
-                LOGGER.error(msg, ex);
-                return null;
-            }
-        });
-        if (producer == null) {
-            // No Need to log the error since it has already been logged in eventTypeCodeToPulsarProducerMap.computeIfAbsent
-            String msg = String.format("Error while creating a Pulsar producer for eventTypeCode %s", eventTypeCode);
-            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+    // A publisher returned by getPublisherAsync may be retired (and closed) by another thread before the message is sent
+    // to it, if the producer settings of the event type changed in the meantime. A send rejected by a retired publisher
+    // is retried once with the current publisher of the event type, so the publisher of the event gets no error.
+    private CompletableFuture<String> sendAsync(EventType eventType, TransportPublisher publisher, OutgoingMessage message,
+                                                boolean retried) {
+        return publisher.publishAsync(message)
+                .handle((messageId, throwable) -> {
+                    if (throwable == null) {
+                        return CompletableFuture.completedFuture(messageId);
+                    }
+                    if (retried || eventTypeCodeToPublisherRegistry.getIfPresent(eventType.getCode()) == publisher) {
+                        return CompletableFuture.<String>failedFuture(throwable);
+                    }
+                    LOGGER.info("Send rejected by the outdated publisher for eventTypeCode {}. Retrying with the current publisher.",
+                            eventType.getCode());
+                    return getPublisherAsync(eventType).thenCompose(currentPublisher ->
+                            sendAsync(eventType, currentPublisher, message, true));
+                })
+                .thenCompose(sent -> sent);
+    }
+
+    // Lock-free once the publisher exists. Only one publisher is created at a time per event type, and a failed
+    // creation is retried (after a backoff) by a later call.
+    // If the producer settings of the event type have changed in the catalog, the publisher is rebuilt.
+    private CompletableFuture<TransportPublisher> getPublisherAsync(EventType eventType) {
+        String eventTypeCode = eventType.getCode();
+        PublisherSettings settings = PublisherSettings.from(eventType);
+        return eventTypeCodeToPublisherRegistry.getAsync(eventTypeCode, x -> createPublisherAsync(eventTypeCode, settings))
+                .thenCompose(publisher -> {
+                    if (publisher.getSettings().equals(settings) || ! isCurrentSettings(eventTypeCode, settings)) {
+                        return CompletableFuture.completedFuture(publisher);
+                    }
+                    // Only the caller that removes the outdated publisher closes it (the others just use the new one)
+                    if (eventTypeCodeToPublisherRegistry.remove(eventTypeCode, publisher)) {
+                        LOGGER.info("Producer settings changed for eventTypeCode {} (from {} to {}). Rebuilding the publisher.",
+                                eventTypeCode, publisher.getSettings(), settings);
+                        closePublisherAsync(eventTypeCode, publisher);
+                    }
+                    return getPublisherAsync(eventType);
+                });
+    }
+
+    // The event type of a caller may have been read before a refresh of the catalog cache. Such a caller must not rebuild
+    // the publisher with its outdated settings (two callers with different views of the catalog would rebuild it back
+    // and forth), so the settings are checked against the current event type of the catalog.
+    private boolean isCurrentSettings(String eventTypeCode, PublisherSettings settings) {
+        try {
+            EventType currentEventType = catalog.getEventType(eventTypeCode);
+            return currentEventType != null && PublisherSettings.from(currentEventType).equals(settings);
+        } catch (Exception ex) {    // the current publisher is kept
+            LOGGER.warn("Error while reading eventTypeCode {} from the catalog to check its producer settings", eventTypeCode, ex);
+            return false;
         }
-        return producer;
+    }
+
+    private CompletableFuture<TransportPublisher> createPublisherAsync(String eventTypeCode, PublisherSettings settings) {
+        LOGGER.info("Creating {} publisher for eventTypeCode {} with settings {}", transport.getName(), eventTypeCode, settings);
+        // The events are encoded by an InflightEventCodec (chosen per event type) and sent as bytes
+        return transport.createPublisherAsync(eventTypeCode, settings)
+                .whenComplete((publisher, throwable) -> {
+                    if (throwable != null) {
+                        String msg = String.format("Error while creating a %s publisher for eventTypeCode %s", transport.getName(), eventTypeCode);
+                        LOGGER.error(msg, throwable);
+                    } else {
+                        LOGGER.info("{} publisher created for eventTypeCode {}", transport.getName(), eventTypeCode);
+                    }
+                });
+    }
+
+    // The pending messages are flushed before closing, so the events being sent with the outdated publisher are not lost
+    private void closePublisherAsync(String eventTypeCode, TransportPublisher publisher) {
+        publisher.flushAsync()
+                .thenCompose(x -> publisher.closeAsync())
+                .whenComplete((x, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.warn("Error while closing the outdated publisher for eventTypeCode {}", eventTypeCode, throwable);
+                    } else {
+                        LOGGER.info("Outdated publisher closed for eventTypeCode {}", eventTypeCode);
+                    }
+                });
     }
 
     private void setTimeToLiveInSecondsIfMissingOrInvalid(InflightEvent eventFromPublisher) {
@@ -141,4 +456,12 @@ public class PublicationManagerService {
             eventFromPublisher.setTimeToLiveInSeconds(config.getMaxTimeToLiveInSeconds());
         }
     }
+
+    private static Exception unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
 }
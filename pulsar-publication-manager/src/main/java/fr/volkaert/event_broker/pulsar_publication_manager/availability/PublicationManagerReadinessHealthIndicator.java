@@ -1,6 +1,7 @@
 package fr.volkaert.event_broker.pulsar_publication_manager.availability;
 
 import fr.volkaert.event_broker.pulsar_publication_manager.BrokerConfig;
+import fr.volkaert.event_broker.pulsar_publication_manager.PublicationManagerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,12 +25,16 @@ public class PublicationManagerReadinessHealthIndicator implements CompositeHeal
     @Qualifier("RestTemplateForCatalogClient")
     RestTemplate restTemplateForCatalogClient;
 
+    @Autowired
+    PublicationManagerService publicationManagerService;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PublicationManagerReadinessHealthIndicator.class);
 
     private Map<String, HealthContributor> contributors = new LinkedHashMap<>();
 
     public PublicationManagerReadinessHealthIndicator() {
         this.contributors.put("catalogReadiness", new CatalogReadinessHealthIndicator());
+        this.contributors.put("pulsarProducersWarmUpReadiness", new PulsarProducersWarmUpReadinessHealthIndicator());
     }
 
     @Override
@@ -60,5 +65,15 @@ public class PublicationManagerReadinessHealthIndicator implements CompositeHeal
             }
         }
     }
-}
 
+    class PulsarProducersWarmUpReadinessHealthIndicator implements HealthIndicator {
+        @Override
+        public Health health() {
+            LOGGER.debug("Checking Pulsar producers warm-up readiness state");
+            if (publicationManagerService.isWarmUpFinished())
+                return Health.up().build();
+            else
+                return Health.outOfService().withDetail("reason", "Warm-up of the Pulsar producers in progress").build();
+        }
+    }
+}
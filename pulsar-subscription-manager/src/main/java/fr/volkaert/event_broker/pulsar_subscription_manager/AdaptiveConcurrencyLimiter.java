@@ -0,0 +1,146 @@
+package fr.volkaert.event_broker.pulsar_subscription_manager;
+
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Limits the number of deliveries in flight to a webhook host (shared by the DeliveryDispatchers of all the subscriptions
+// whose webhook is on this host). The limit is discovered with an AIMD (Additive Increase, Multiplicative Decrease) algorithm:
+// - each delivery which succeeds within rttTolerance times the smoothed RTT of the host increases the limit by 1/limit
+//   (so by 1 per "round" of deliveries), as long as the current limit is actually used (at least half of it in flight)
+// - each delivery with a congestion signal multiplies the limit by backoffRatio: a delivery which takes more than
+//   rttTolerance times the smoothed RTT, which fails with a read timeout or a 5xx/429 HTTP status code (CONGESTED
+//   outcome) or which is rejected by the bulkhead of the host in the Subscription Adapter (THROTTLED outcome)
+// - the other failed deliveries (4xx HTTP status code, connection error, error of the Subscription Adapter...) do not
+//   change the limit: the host is not overloaded, and they are handled by the circuit breaker of the subscription
+// The limit stays between 1 and maxLimit. The deliveries over the limit are not failed: they wait in the queues of their
+// dispatcher (see DeliveryDispatcher) until a delivery completes.
+class AdaptiveConcurrencyLimiter {
+
+    private static final int MIN_LIMIT = 1;
+    private static final double RTT_SMOOTHING_FACTOR = 0.02;    // weight of a new RTT sample in the smoothed RTT
+
+    private final String webhookHost;
+    private final int maxLimit;     // <= 0 means unlimited (the limiter is disabled)
+    private final double backoffRatio;
+    private final double rttTolerance;
+    private final AtomicLong limitGauge;
+    private final AtomicLong inflightGauge;
+    private final AtomicLong rttGauge;
+
+    private final Queue<Runnable> waiters = new ConcurrentLinkedQueue<>();   // called once a delivery can be started
+
+    private volatile double limit;  // written under the lock of this limiter
+    private volatile int inflight;  // idem
+    private double smoothedRttInNanos;  // RTT of the successful deliveries, 0 until the first one
+
+    static AdaptiveConcurrencyLimiter unlimited(String webhookHost) {
+        return new AdaptiveConcurrencyLimiter(webhookHost, 0, 0, 1, 1, null);
+    }
+
+    AdaptiveConcurrencyLimiter(String webhookHost, int initialLimit, int maxLimit, double backoffRatio, double rttTolerance,
+                               TelemetryService telemetryService) {
+        this.webhookHost = webhookHost;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = Math.min(Math.max(backoffRatio, 0.1), 0.99);
+        this.rttTolerance = Math.max(rttTolerance, 1.0);
+        this.limit = Math.min(Math.max(initialLimit, MIN_LIMIT), Math.max(maxLimit, MIN_LIMIT));
+        if (isEnabled()) {
+            this.limitGauge = telemetryService.webhookConcurrencyLimitGauge(webhookHost);
+            this.inflightGauge = telemetryService.webhookInflightDeliveriesGauge(webhookHost);
+            this.rttGauge = telemetryService.webhookRttGauge(webhookHost);
+            this.limitGauge.set((long) limit);
+        } else {
+            this.limitGauge = this.inflightGauge = this.rttGauge = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return maxLimit > 0;
+    }
+
+    String getWebhookHost() {
+        return webhookHost;
+    }
+
+    // Lock-free
+    boolean hasCapacity() {
+        return ! isEnabled() || inflight < (int) limit;
+    }
+
+    boolean tryAcquire() {
+        if (! isEnabled()) {
+            return true;
+        }
+        synchronized (this) {
+            if (inflight >= (int) limit) {
+                return false;
+            }
+            inflightGauge.set(++inflight);
+            return true;
+        }
+    }
+
+    // The waiter is called (once) by the next delivery which completes, or right now if there is capacity again.
+    // A waiter which does not start a delivery must call wakeUpNextWaiter() so the capacity is not lost.
+    void awaitCapacity(Runnable waiter) {
+        if (! isEnabled()) {
+            waiter.run();
+            return;
+        }
+        waiters.add(waiter);
+        wakeUpNextWaiter();  // the capacity may have been released in the meantime
+    }
+
+    void wakeUpNextWaiter() {
+        if (waiters.isEmpty() || ! hasCapacity()) {
+            return;
+        }
+        Runnable waiter = waiters.poll();
+        if (waiter != null) {
+            waiter.run();
+        }
+    }
+
+    // Gives back a permit which has not been used for a delivery
+    void releaseUnused() {
+        if (! isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            inflightGauge.set(--inflight);
+        }
+        wakeUpNextWaiter();
+    }
+
+    void release(long rttInNanos, DeliveryDispatcher.DeliveryOutcome outcome) {
+        if (! isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            if (outcome == DeliveryDispatcher.DeliveryOutcome.SUCCEEDED || outcome.isCongestion()) {
+                updateLimit(rttInNanos, outcome == DeliveryDispatcher.DeliveryOutcome.SUCCEEDED);
+            }
+            inflightGauge.set(--inflight);
+        }
+        wakeUpNextWaiter();
+    }
+
+    private void updateLimit(long rttInNanos, boolean succeeded) {
+        boolean congested = ! succeeded || (smoothedRttInNanos > 0 && rttInNanos > rttTolerance * smoothedRttInNanos);
+        if (succeeded) {
+            smoothedRttInNanos = smoothedRttInNanos == 0 ? rttInNanos :
+                    smoothedRttInNanos + RTT_SMOOTHING_FACTOR * (rttInNanos - smoothedRttInNanos);
+            rttGauge.set(TimeUnit.NANOSECONDS.toMillis((long) smoothedRttInNanos));
+        }
+        if (congested) {
+            limit = Math.max(MIN_LIMIT, limit * backoffRatio);
+        } else if (inflight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        limitGauge.set((long) limit);
+    }
+}
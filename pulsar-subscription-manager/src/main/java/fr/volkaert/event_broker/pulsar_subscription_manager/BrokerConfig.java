@@ -15,8 +15,39 @@ public class BrokerConfig {
     private long connectTimeoutInSecondsForSubscriptionAdapter;
     private long readTimeoutInSecondsForSubscriptionAdapter;
 
+    private String transport = "pulsar";    // "pulsar" or "in-memory" (see MessagingTransport)
     private String pulsarServiceUrl;
-    private int pulsarListenerThreadCount;
+    private int pulsarListenerThreadCount;  // also used as listener thread count by the in-memory transport
+
+    // After a failed creation of a Pulsar consumer or DLQ producer, the next creation is attempted after a backoff (doubled at each failure)
+    private long minBackoffInMillisForPulsarClientCreation;
+    private long maxBackoffInMillisForPulsarClientCreation;
+
+    // The webhooks are called by a pool of delivery workers (not by the listener threads of the messaging transport)
+    private int deliveryWorkerThreadCount;
+    private int defaultDeliveryConcurrency;         // used if the deliveryConcurrency of the subscription is not set
+    private int maxQueuedDeliveriesPerSubscription; // beyond, the subscriber is paused until half of the queue is delivered
+    private long defaultDeliveryBatchMaxLingerInMillis; // used if the deliveryBatchMaxLingerInMillis of a batch subscription is not set
+
+    // After circuitBreakerFailureThreshold consecutive failed deliveries, the deliveries of the subscription are suspended
+    // for circuitBreakerOpenDurationInMillis, then a single probe delivery decides whether they restart (see DeliveryCircuitBreaker)
+    private int circuitBreakerFailureThreshold;     // 0 disables the circuit breakers
+    private long circuitBreakerOpenDurationInMillis;
+
+    // The deliveries in flight to a webhook host (for all the subscriptions) are limited by an adaptive limit, discovered
+    // from the latency and the errors of the deliveries (see AdaptiveConcurrencyLimiter)
+    private boolean adaptiveConcurrencyEnabled;
+    private int adaptiveConcurrencyInitialLimitPerWebhookHost;
+    private int adaptiveConcurrencyMaxLimitPerWebhookHost;
+    private double adaptiveConcurrencyBackoffRatio;     // the limit is multiplied by this ratio after a failed or slow delivery
+    private double adaptiveConcurrencyRttTolerance;     // a delivery is slow if it takes more than this times the smoothed RTT
+
+    // If enabled, the Subscription Adapter is called with a non-blocking WebClient: a delivery in progress does not hold
+    // a delivery worker thread, so the delivery concurrency is no more bounded by the delivery worker thread count.
+    private boolean asynchronousDeliveryEnabled;
+    private int maxConnectionsToSubscriptionAdapter;
+    private long pendingAcquireTimeoutInSecondsForSubscriptionAdapter;  // max wait for a free connection of the pool
+    private int maxInMemorySizeInBytesForSubscriptionAdapter;           // max size of a response of the Subscription Adapter
 
     private String subscriptionAdapterUrl;
     private String authClientIdForSubscriptionAdapter;
@@ -28,12 +59,24 @@ public class BrokerConfig {
     private long defaultTimeToLiveInSecondsForWebhookClient4xxError;
     private long defaultTimeToLiveInSecondsForWebhookAuth401Or403Error;
 
-    // Cluster size is the number of PulsarSubscriptionManager instances and Cluster index is the index of this
-    // PulsarSubscriptionManager instance within the cluster.
-    // Cluster index must  be ***UNIQUE*** within the cluster and must follow the sequence 0, 1... < Cluster size.
-    // The PulsarSubscriptionManager instance in charge of the management of an event is the instance that meets the
-    // criteria 'broker.cluster-index == (sum-of-the-ascii-codes-of-the-chars-of-event-type-code % broker.cluster-size)'.
-    // For a given event type, only one instance of PulsarSubscriptionManager will manage the events.
+    // After a failed delivery, the event is redelivered after a backoff doubled at each redelivery (with jitter), from
+    // initialRedeliveryBackoffInMillis to the maxRedeliveryBackoffInMillis of the subscription (or the default below)
+    private long initialRedeliveryBackoffInMillis;
+    private long defaultMaxRedeliveryBackoffInMillis;
+
+    // An event rejected by the bulkhead of its webhook host in the Subscription Adapter (the host is busy) is redelivered
+    // after this fixed delay, without counting a redelivery (so the backoff above does not grow)
+    private long busyWebhookHostRedeliveryDelayInMillis;
+
+    // The failover subscriptions are assigned to the instances of the cluster of PulsarSubscriptionManagers (see
+    // SubscriptionAssignment). The members of the cluster are either:
+    // - "eureka": the instances of PulsarSubscriptionManager registered in Eureka (the cluster size and index are ignored)
+    // - "static": the indexes 0, 1... < Cluster size, this instance being Cluster index (which must be ***UNIQUE***)
+    private String clusterMembership = "eureka";
     private int clusterSize;
     private int clusterIndex;
+    private double clusterLoadFactor;   // the load of an instance is at most (1 + clusterLoadFactor) times the average load
+
+    private long subscribersRefreshIntervalInMillis;    // interval between two refreshes of the subscriptions and of the cluster
+    private long subscriberHandoffTimeoutInSeconds;     // max wait for the deliveries in progress when a subscription moves to another instance
 }
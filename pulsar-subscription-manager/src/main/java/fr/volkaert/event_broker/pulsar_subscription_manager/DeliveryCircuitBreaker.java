@@ -0,0 +1,156 @@
+package fr.volkaert.event_broker.pulsar_subscription_manager;
+
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Circuit breaker of the deliveries of a subscription (see DeliveryDispatcher):
+// - CLOSED: the events are delivered. After failureThreshold consecutive failed deliveries, the circuit is opened.
+// - OPEN: no event is delivered and the subscriber is paused (so no more events are prefetched), until the dispatcher
+//   half-opens the circuit once openDurationInMillis has elapsed.
+// - HALF_OPEN: the subscriber is resumed but only one delivery (the probe) is allowed at a time. If the probe succeeds,
+//   the circuit is closed, if it fails, the circuit is opened again.
+// The results of the deliveries started before the circuit was opened are ignored (only the probe can close the circuit).
+// If failureThreshold <= 0, the circuit breaker is disabled (the circuit is always closed).
+class DeliveryCircuitBreaker {
+
+    enum State { CLOSED, HALF_OPEN, OPEN }   // the ordinal is the value of the state gauge
+
+    // A delivery must get a permit before polling its message(s), and give its permit back once completed
+    enum Permit { GRANTED, PROBE, REJECTED }
+
+    private final String subscriptionCode;
+    private final int failureThreshold;
+    private final long openDurationInMillis;
+    private final TelemetryService telemetryService;
+    private final AtomicLong stateGauge;
+
+    private volatile State state = State.CLOSED;    // written under the lock of this circuit breaker
+    private int consecutiveFailures;
+    private boolean probeInFlight;
+    private long openCount;
+    private Instant lastStateChangeDate = Instant.now();
+
+    DeliveryCircuitBreaker(String subscriptionCode, int failureThreshold, long openDurationInMillis, TelemetryService telemetryService) {
+        this.subscriptionCode = subscriptionCode;
+        this.failureThreshold = failureThreshold;
+        this.openDurationInMillis = Math.max(0, openDurationInMillis);
+        this.telemetryService = telemetryService;
+        this.stateGauge = telemetryService.deliveryCircuitBreakerStateGauge(subscriptionCode);
+        this.stateGauge.set(State.CLOSED.ordinal());
+    }
+
+    boolean isEnabled() {
+        return failureThreshold > 0;
+    }
+
+    long getOpenDurationInMillis() {
+        return openDurationInMillis;
+    }
+
+    // Lock-free while the circuit is closed. Does not take a permit.
+    boolean isDeliveryAllowed() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            return state == State.CLOSED || (state == State.HALF_OPEN && ! probeInFlight);
+        }
+    }
+
+    // Lock-free while the circuit is closed
+    Permit tryAcquirePermit() {
+        if (state == State.CLOSED) {
+            return Permit.GRANTED;
+        }
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return Permit.GRANTED;
+            }
+            if (state == State.HALF_OPEN && ! probeInFlight) {
+                probeInFlight = true;
+                return Permit.PROBE;
+            }
+            return Permit.REJECTED;
+        }
+    }
+
+    // Gives back a permit which has not been used for a delivery (for instance because there was nothing to deliver)
+    synchronized void releasePermit(Permit permit) {
+        if (permit == Permit.PROBE) {
+            probeInFlight = false;
+        }
+    }
+
+    // Returns the new state if the dispatcher must react (OPEN: pause the subscriber and schedule the half-opening,
+    // CLOSED: resume the subscriber and the deliveries, HALF_OPEN: the probe did not reach the webhook so another probe
+    // must be delivered), otherwise null.
+    synchronized State onDeliveryCompleted(Permit permit, DeliveryDispatcher.DeliveryOutcome outcome) {
+        if (! isEnabled()) {
+            return null;
+        }
+        if (permit == Permit.PROBE) {
+            probeInFlight = false;
+            switch (outcome) {
+                case SUCCEEDED:
+                    consecutiveFailures = 0;
+                    return changeState(State.CLOSED);
+                case CONGESTED:
+                case FAILED:
+                    consecutiveFailures++;
+                    return changeState(State.OPEN);
+                default:
+                    return State.HALF_OPEN;
+            }
+        }
+        if (state != State.CLOSED) {
+            return null;    // delivery started before the circuit was opened
+        }
+        if (outcome == DeliveryDispatcher.DeliveryOutcome.SUCCEEDED) {
+            consecutiveFailures = 0;
+        } else if (outcome.isFailure() && ++consecutiveFailures >= failureThreshold) {
+            return changeState(State.OPEN);
+        }
+        return null;
+    }
+
+    // Called by the dispatcher once openDurationInMillis has elapsed. Returns false if the circuit is not open anymore.
+    synchronized boolean halfOpen() {
+        if (state != State.OPEN) {
+            return false;
+        }
+        changeState(State.HALF_OPEN);
+        return true;
+    }
+
+    synchronized Status getStatus() {
+        return new Status(state.name(), consecutiveFailures, failureThreshold, openDurationInMillis, openCount, lastStateChangeDate);
+    }
+
+    private State changeState(State newState) {
+        State oldState = state;
+        state = newState;
+        lastStateChangeDate = Instant.now();
+        if (newState == State.OPEN) {
+            openCount++;
+        }
+        stateGauge.set(newState.ordinal());
+        telemetryService.eventDeliveryCircuitBreakerStateChanged(subscriptionCode, oldState.name(), newState.name(), consecutiveFailures);
+        return newState;
+    }
+
+    // Exposed by the "circuitbreakers" actuator endpoint (see DeliveryCircuitBreakersEndpoint)
+    @Data
+    @AllArgsConstructor
+    public static class Status {
+        private String state;
+        private int consecutiveFailures;
+        private int failureThreshold;
+        private long openDurationInMillis;
+        private long openCount;
+        private Instant lastStateChangeDate;
+    }
+}
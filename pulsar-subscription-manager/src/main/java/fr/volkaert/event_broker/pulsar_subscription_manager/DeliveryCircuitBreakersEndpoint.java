@@ -0,0 +1,34 @@
+package fr.volkaert.event_broker.pulsar_subscription_manager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Exposes the state of the circuit breakers of the subscriptions managed by this instance at /actuator/circuitbreakers
+// (and /actuator/circuitbreakers/{subscriptionCode} for a single subscription)
+@Component
+@Endpoint(id = "circuitbreakers")
+public class DeliveryCircuitBreakersEndpoint {
+
+    @Autowired
+    SubscriptionManagerService subscriptionManagerService;
+
+    @ReadOperation
+    public Map<String, DeliveryCircuitBreaker.Status> circuitBreakers() {
+        Map<String, DeliveryCircuitBreaker.Status> statuses = new TreeMap<>();
+        subscriptionManagerService.subscriptionCodeToDeliveryDispatcher.forEach((subscriptionCode, dispatcher) ->
+                statuses.put(subscriptionCode, dispatcher.getCircuitBreaker().getStatus()));
+        return statuses;
+    }
+
+    @ReadOperation
+    public DeliveryCircuitBreaker.Status circuitBreaker(@Selector String subscriptionCode) {
+        DeliveryDispatcher dispatcher = subscriptionManagerService.subscriptionCodeToDeliveryDispatcher.get(subscriptionCode);
+        return dispatcher != null ? dispatcher.getCircuitBreaker().getStatus() : null;    // null means 404
+    }
+}
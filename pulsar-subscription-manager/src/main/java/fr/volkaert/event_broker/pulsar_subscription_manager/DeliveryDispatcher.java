@@ -0,0 +1,747 @@
+package fr.volkaert.event_broker.pulsar_subscription_manager;
+
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+import fr.volkaert.event_broker.transport.ReceivedMessage;
+import fr.volkaert.event_broker.transport.TransportSubscriber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands over the messages of a subscription to the delivery workers, so the listener threads of the messaging
+// transport only dispatch and are never held by a (slow) webhook.
+// The delivery handler returns a future completed (with the outcome of the delivery) once the message has been acked or
+// nacked, so at most `concurrency` deliveries are in flight at a time for the subscription (whether the HTTP client is
+// blocking or not).
+// - If the delivery is ordered by businessId, the messages are spread over `concurrency` lanes according to their key
+//   (the businessId of the event) and each lane delivers its messages one at a time, so the events with the same
+//   businessId are delivered in order. The messages without key all go to the first lane.
+// - Otherwise, there is a single lane delivering up to `concurrency` messages at a time (without order guarantee if
+//   `concurrency` is greater than 1).
+// If redeliveredInPlace is true (only for a delivery ordered by businessId), a message negatively acked (or postponed)
+// by the delivery handler is not given back to the transport (it would be redelivered after the next messages of its
+// businessId): its lane stops and delivers it again once its redelivery delay has elapsed (see Lane.redeliverInPlace),
+// until it is delivered or recorded in the DLQ. Meanwhile, ALL the messages of the lane wait (not only those with the
+// same businessId), and the message is still unacked (so it is redelivered by the transport, in order, if the
+// application stops) and counts in the queue size.
+// If batching is enabled (see BatchSettings), a lane delivers its messages by batches: a batch is delivered as soon as
+// maxSize messages are queued in the lane, or when its oldest message has waited maxLingerInMillis. The concurrency is
+// then the number of batches delivered at the same time.
+// The number of queued messages is bounded: beyond maxQueueSize, the subscriber is paused until half of the queue has
+// been delivered. Pay attention: the bound is not strict since the messages already prefetched by the transport are
+// still dispatched while the subscriber is paused.
+// The deliveries go through a circuit breaker (see DeliveryCircuitBreaker): while the circuit is open, the queued messages
+// are not delivered and the subscriber is paused, so a subscription whose webhook is down does not hold delivery workers
+// nor connections needed by the other subscriptions.
+// Each delivery also needs a permit of the concurrency limiter of the webhook host (see AdaptiveConcurrencyLimiter),
+// shared by all the subscriptions whose webhook is on this host. Without permit, the messages wait in their lane (they
+// are neither failed nor negatively acked) until a delivery to the host completes.
+class DeliveryDispatcher {
+
+    // Max number of messages (or batches) delivered synchronously by a worker before giving its thread back to the other lanes/subscriptions
+    private static final int MAX_MESSAGES_PER_DRAIN = 100;
+
+    private final String subscriptionCode;
+    private final boolean orderedByBusinessId;
+    private final boolean redeliveredInPlace;
+    private final int maxQueueSize;
+    private final Lane[] lanes;
+    private final Executor deliveryExecutor;
+    private final DeliveryHandler deliveryHandler;
+    private volatile DeliveryPlan deliveryPlan;     // replaced as a whole when the catalog changes (see DeliveryPlan)
+    private final BatchSettings batchSettings;
+    private final DeliveryCircuitBreaker circuitBreaker;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final ScheduledExecutorService scheduler;  // for the linger timers of the batches and the half-opening of the circuit
+    private final TelemetryService telemetryService;
+
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong queueSizeGauge;
+    // The subscriber is paused if the queue is full, if the circuit is open or once drainAsync() has been called
+    private boolean paused;                             // read and written under the lock of this dispatcher
+    private volatile boolean pausedDueToQueueSize;      // written under the lock of this dispatcher
+    private boolean pausedDueToOpenCircuit;             // read and written under the lock of this dispatcher
+    private volatile CompletableFuture<Void> drained;   // not null once drainAsync() has been called, written under the lock
+    private volatile boolean abandoned;                 // true once abandon() has been called
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeliveryDispatcher.class);
+
+    DeliveryDispatcher(String subscriptionCode, int concurrency, boolean orderedByBusinessId, boolean redeliveredInPlace, int maxQueueSize,
+                       BatchSettings batchSettings, DeliveryCircuitBreaker circuitBreaker,
+                       AdaptiveConcurrencyLimiter concurrencyLimiter, Executor deliveryExecutor, ScheduledExecutorService scheduler,
+                       DeliveryPlan deliveryPlan, DeliveryHandler deliveryHandler, TelemetryService telemetryService) {
+        this.subscriptionCode = subscriptionCode;
+        this.deliveryPlan = deliveryPlan;
+        this.orderedByBusinessId = orderedByBusinessId;
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        this.deliveryExecutor = deliveryExecutor;
+        this.deliveryHandler = deliveryHandler;
+        this.batchSettings = batchSettings != null ? batchSettings : BatchSettings.NONE;
+        this.circuitBreaker = circuitBreaker;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.scheduler = scheduler;
+        this.telemetryService = telemetryService;
+        this.queueSizeGauge = telemetryService.deliveryQueueSizeGauge(subscriptionCode);
+
+        int laneCount = orderedByBusinessId ? Math.max(1, concurrency) : 1;
+        int parallelismPerLane = orderedByBusinessId ? 1 : Math.max(1, concurrency);
+        this.redeliveredInPlace = orderedByBusinessId && redeliveredInPlace;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(parallelismPerLane);
+        }
+    }
+
+    // Called by the listener threads of the messaging transport. Never blocks.
+    // *** NEVER LET AN EXCEPTION BE RAISED/THROWN BY THIS OPERATION !!! ***
+    void dispatch(TransportSubscriber subscriber, ReceivedMessage message) {
+        if (abandoned) {
+            return; // left unacked, so redelivered by the transport once the subscriber is closed
+        }
+        try {
+            int size = queueSize.incrementAndGet();
+            queueSizeGauge.incrementAndGet();
+            if (size >= maxQueueSize && ! pausedDueToQueueSize) {
+                pauseDueToQueueSize(subscriber, size);
+            }
+            selectLane(message).enqueue(new QueuedMessage(subscriber, message, System.nanoTime()));
+        } catch (Exception ex) {    // should never happen...
+            LOGGER.error("Error while dispatching message {} of subscription {}", message, subscriptionCode, ex);
+        }
+    }
+
+    private Lane selectLane(ReceivedMessage message) {
+        if (lanes.length == 1 || message.getKey() == null) {
+            return lanes[0];
+        }
+        return lanes[(message.getKey().hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    DeliveryCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    DeliveryPlan getDeliveryPlan() {
+        return deliveryPlan;
+    }
+
+    // The deliveries already started keep the previous plan
+    void setDeliveryPlan(DeliveryPlan deliveryPlan) {
+        this.deliveryPlan = deliveryPlan;
+    }
+
+    // The returned future is never completed exceptionally
+    private CompletableFuture<Void> deliver(Lane lane, List<QueuedMessage> batch, DeliveryCircuitBreaker.Permit permit) {
+        TransportSubscriber subscriber = batch.get(0).subscriber;
+        InPlaceRedeliveries inPlaceRedeliveries = redeliveredInPlace ? new InPlaceRedeliveries(subscriber) : null;
+        CompletableFuture<DeliveryOutcome> delivery;
+        long now = System.nanoTime();
+        try {
+            List<ReceivedMessage> messages = batch.size() == 1 ?
+                    Collections.singletonList(batch.get(0).message) : new ArrayList<>(batch.size());
+            for (QueuedMessage queuedMessage : batch) {
+                telemetryService.eventDeliveryDequeued(subscriptionCode, now - queuedMessage.enqueueTimeInNanos);
+                if (batch.size() > 1) {
+                    messages.add(queuedMessage.message);
+                }
+            }
+            delivery = deliveryHandler.deliver(inPlaceRedeliveries != null ? inPlaceRedeliveries : subscriber, messages, deliveryPlan);
+        } catch (Exception ex) {    // should never happen...
+            delivery = CompletableFuture.failedFuture(ex);
+        }
+        return delivery.handle((outcome, throwable) -> {
+            if (throwable != null) {    // should never happen...
+                LOGGER.error("Error while delivering {} message(s) of subscription {}", batch.size(), subscriptionCode, throwable);
+            }
+            // The messages delivered again in place are still queued
+            int completedCount = batch.size() - (inPlaceRedeliveries != null ? lane.redeliverInPlace(batch, inPlaceRedeliveries) : 0);
+            int size = queueSize.addAndGet(-completedCount);
+            queueSizeGauge.addAndGet(-completedCount);
+            if (pausedDueToQueueSize && size <= maxQueueSize / 2) {
+                resumeDueToQueueSize(subscriber, size);
+            }
+            DeliveryOutcome deliveryOutcome = outcome != null ? outcome : DeliveryOutcome.SKIPPED;
+            concurrencyLimiter.release(System.nanoTime() - now, deliveryOutcome);
+            onDeliveryCompleted(subscriber, permit, deliveryOutcome);
+            if (size == 0 && drained != null) {
+                completeDrainIfEmpty();
+            }
+            return null;
+        });
+    }
+
+    private synchronized void pauseDueToQueueSize(TransportSubscriber subscriber, int size) {
+        if (! pausedDueToQueueSize) {
+            pausedDueToQueueSize = true;
+            updateSubscriberPause(subscriber);
+            telemetryService.eventDeliveryPaused(subscriptionCode, size);
+        }
+    }
+
+    private synchronized void resumeDueToQueueSize(TransportSubscriber subscriber, int size) {
+        if (pausedDueToQueueSize) {
+            pausedDueToQueueSize = false;
+            if (updateSubscriberPause(subscriber)) {
+                telemetryService.eventDeliveryResumed(subscriptionCode, size);
+            }
+        }
+    }
+
+    // Pauses or resumes the subscriber according to the reasons to pause it. Returns true if the subscriber has been resumed.
+    private synchronized boolean updateSubscriberPause(TransportSubscriber subscriber) {
+        boolean shouldBePaused = pausedDueToQueueSize || pausedDueToOpenCircuit || drained != null;
+        if (shouldBePaused && ! paused) {
+            paused = true;
+            subscriber.pause();
+        } else if (! shouldBePaused && paused) {
+            paused = false;
+            subscriber.resume();
+            return true;
+        }
+        return false;
+    }
+
+    private void onDeliveryCompleted(TransportSubscriber subscriber, DeliveryCircuitBreaker.Permit permit, DeliveryOutcome outcome) {
+        DeliveryCircuitBreaker.State state = circuitBreaker.onDeliveryCompleted(permit, outcome);
+        if (state == DeliveryCircuitBreaker.State.OPEN) {
+            setPausedDueToOpenCircuit(subscriber, true);
+            scheduleHalfOpening(subscriber);
+        } else if (state == DeliveryCircuitBreaker.State.CLOSED) {
+            setPausedDueToOpenCircuit(subscriber, false);
+            startAllLanes();
+        } else if (state == DeliveryCircuitBreaker.State.HALF_OPEN) {
+            startAllLanes();    // to deliver another probe
+        }
+    }
+
+    private synchronized void setPausedDueToOpenCircuit(TransportSubscriber subscriber, boolean pausedDueToOpenCircuit) {
+        this.pausedDueToOpenCircuit = pausedDueToOpenCircuit;
+        updateSubscriberPause(subscriber);
+    }
+
+    // Once the circuit is half-open, the subscriber is resumed (since the messages to deliver as probe may not have been
+    // received yet) but only one delivery is allowed at a time
+    private void scheduleHalfOpening(TransportSubscriber subscriber) {
+        try {
+            scheduler.schedule(() -> {
+                if (circuitBreaker.halfOpen()) {
+                    setPausedDueToOpenCircuit(subscriber, false);
+                    startAllLanes();
+                }
+            }, circuitBreaker.getOpenDurationInMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {  // the application is stopping
+            LOGGER.warn("Half-opening of the circuit rejected for subscription {}", subscriptionCode);
+        }
+    }
+
+    private void startAllLanes() {
+        for (Lane lane : lanes) {
+            lane.startSlotIfNeeded();
+        }
+    }
+
+    // Pauses the subscriber for good. The returned future is completed once the queued messages have been delivered
+    // (used to hand off the subscription to another instance without interrupting deliveries). The messages of the lanes
+    // waiting for an in-place redelivery are not delivered: they are left unacked, so the transport redelivers them (in
+    // order) once the subscriber is closed.
+    synchronized CompletableFuture<Void> drainAsync(TransportSubscriber subscriber) {
+        if (drained == null) {
+            drained = new CompletableFuture<>();
+            updateSubscriberPause(subscriber);
+            for (Lane lane : lanes) {
+                if (lane.waitingForRedelivery) {
+                    lane.dropQueuedMessages();
+                }
+            }
+            if (queueSize.get() == 0) {
+                drained.complete(null);
+            }
+        }
+        return drained;
+    }
+
+    // Called if the queued messages have not been delivered within the handoff timeout (see drainAsync). They are dropped
+    // (left unacked, so redelivered by the transport once the subscriber is closed) and subtracted from the queue size
+    // gauge, which is shared with the next dispatcher of the subscription. The deliveries in progress are subtracted
+    // when they complete.
+    synchronized void abandon() {
+        abandoned = true;
+        for (Lane lane : lanes) {
+            lane.dropQueuedMessages();
+        }
+    }
+
+    private synchronized void completeDrainIfEmpty() {
+        if (drained != null && queueSize.get() == 0) {
+            drained.complete(null);
+        }
+    }
+
+    // A lane delivers its messages with at most `parallelism` deliveries in flight at a time (so in order if parallelism
+    // is 1). A slot delivers the messages (or batches) one after the other: the next one is taken when the delivery of the
+    // previous one completes, so a slot does not hold a thread while waiting for an asynchronous delivery.
+    private class Lane {
+        private final Deque<QueuedMessage> queue = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger queuedCount = new AtomicInteger();     // size of the queue (only used for batching)
+        private final AtomicInteger activeSlots = new AtomicInteger();
+        private final AtomicBoolean lingerTimerArmed = new AtomicBoolean();
+        private final AtomicBoolean waitingForConcurrencyLimiter = new AtomicBoolean();
+        private final int parallelism;
+        // True while the messages at the head of the lane wait for their in-place redelivery
+        private volatile boolean waitingForRedelivery;
+
+        Lane(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        void enqueue(QueuedMessage queuedMessage) {
+            queue.add(queuedMessage);
+            queuedCount.incrementAndGet();
+            startSlotIfNeeded();
+        }
+
+        // Without batching, a message is ready as soon as it is queued
+        private boolean isBatchReady(QueuedMessage oldestQueuedMessage) {
+            return ! batchSettings.isEnabled()
+                    || queuedCount.get() >= batchSettings.maxSize
+                    || drained != null
+                    || System.nanoTime() - oldestQueuedMessage.enqueueTimeInNanos >= batchSettings.maxLingerInNanos;
+        }
+
+        // Returns false if there is nothing to deliver for now (so a capacity of the concurrency limiter can be used by another lane)
+        private boolean startSlotIfNeeded() {
+            QueuedMessage oldestQueuedMessage;
+            while ((oldestQueuedMessage = queue.peek()) != null) {
+                if (waitingForRedelivery) {
+                    return false; // the lane is started again by the redelivery timer
+                }
+                if (! isBatchReady(oldestQueuedMessage)) {
+                    armLingerTimerIfNeeded(oldestQueuedMessage);
+                    return false;
+                }
+                if (! circuitBreaker.isDeliveryAllowed()) {
+                    return false; // the lanes are started again once the circuit is half-open or closed
+                }
+                int active = activeSlots.get();
+                if (active >= parallelism) {
+                    return true; // the active slots will deliver the message
+                }
+                if (! hasConcurrencyLimiterCapacity()) {
+                    return true; // the lane is started again once a delivery to the webhook host completes
+                }
+                if (activeSlots.compareAndSet(active, active + 1)) {
+                    continueSlot();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean hasConcurrencyLimiterCapacity() {
+            if (concurrencyLimiter.hasCapacity()) {
+                return true;
+            }
+            if (waitingForConcurrencyLimiter.compareAndSet(false, true)) {
+                concurrencyLimiter.awaitCapacity(this::onConcurrencyLimiterCapacity);
+            }
+            return false;
+        }
+
+        private void onConcurrencyLimiterCapacity() {
+            waitingForConcurrencyLimiter.set(false);
+            if (! startSlotIfNeeded()) {
+                concurrencyLimiter.wakeUpNextWaiter();
+            }
+        }
+
+        // The timer is armed for the oldest queued message (so it never fires too late for the messages queued after it)
+        private void armLingerTimerIfNeeded(QueuedMessage oldestQueuedMessage) {
+            if (lingerTimerArmed.compareAndSet(false, true)) {
+                long delayInNanos = batchSettings.maxLingerInNanos - (System.nanoTime() - oldestQueuedMessage.enqueueTimeInNanos);
+                try {
+                    scheduler.schedule(() -> {
+                        lingerTimerArmed.set(false);
+                        startSlotIfNeeded();
+                    }, Math.max(0, delayInNanos), TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException ex) {  // the application is stopping
+                    lingerTimerArmed.set(false);
+                }
+            }
+        }
+
+        private void continueSlot() {
+            try {
+                deliveryExecutor.execute(this::runSlot);
+            } catch (RejectedExecutionException ex) {  // the application is stopping
+                activeSlots.decrementAndGet();
+                LOGGER.warn("Delivery worker rejected for subscription {}. The queued messages will be redelivered by the transport.",
+                        subscriptionCode);
+            }
+        }
+
+        private void runSlot() {
+            int deliveredCount = 0;
+            QueuedMessage oldestQueuedMessage;
+            while (! waitingForRedelivery && (oldestQueuedMessage = queue.peek()) != null && isBatchReady(oldestQueuedMessage)) {
+                DeliveryCircuitBreaker.Permit permit = circuitBreaker.tryAcquirePermit();
+                if (permit == DeliveryCircuitBreaker.Permit.REJECTED) {
+                    break;  // the circuit is open (or the probe of the half-open circuit is in flight)
+                }
+                if (! concurrencyLimiter.tryAcquire()) {
+                    circuitBreaker.releasePermit(permit);
+                    break;  // the limit of the webhook host is reached
+                }
+                List<QueuedMessage> batch = pollBatch();
+                if (batch.isEmpty()) {
+                    circuitBreaker.releasePermit(permit);
+                    concurrencyLimiter.releaseUnused();
+                    break;  // polled by another slot in the meantime
+                }
+                CompletableFuture<Void> delivery = deliver(this, batch, permit);
+                if (! delivery.isDone()) {
+                    delivery.whenComplete((x, throwable) -> continueSlot());
+                    return; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+                }
+                if (++deliveredCount >= MAX_MESSAGES_PER_DRAIN) {
+                    continueSlot(); // give the thread back to the other lanes/subscriptions
+                    return; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+                }
+            }
+            activeSlots.decrementAndGet();
+            // Messages may have been queued after the last poll
+            if (! startSlotIfNeeded()) {
+                concurrencyLimiter.wakeUpNextWaiter();
+            }
+        }
+
+        private List<QueuedMessage> pollBatch() {
+            if (! batchSettings.isEnabled()) {
+                QueuedMessage queuedMessage = queue.poll();
+                if (queuedMessage == null) {
+                    return Collections.emptyList();
+                }
+                queuedCount.decrementAndGet();
+                return Collections.singletonList(queuedMessage);
+            }
+            // Locked so the peek (to check the size in bytes) and the poll see the same message
+            synchronized (this) {
+                List<QueuedMessage> batch = new ArrayList<>(Math.min(batchSettings.maxSize, queuedCount.get()));
+                // If the messages are delivered again in place, a batch contains at most one message per businessId:
+                // otherwise the next messages of a businessId would be delivered with it even if it fails
+                Set<String> keysOfTheBatch = redeliveredInPlace ? new HashSet<>() : null;
+                long batchSizeInBytes = 0;
+                QueuedMessage queuedMessage;
+                while (batch.size() < batchSettings.maxSize && (queuedMessage = queue.peek()) != null) {
+                    int messageSizeInBytes = queuedMessage.message.getData() != null ? queuedMessage.message.getData().length : 0;
+                    if (! batch.isEmpty() && batchSizeInBytes + messageSizeInBytes > batchSettings.maxBytes) {
+                        break;  // a message bigger than maxBytes is delivered alone
+                    }
+                    String key = queuedMessage.message.getKey();
+                    if (keysOfTheBatch != null && key != null && ! keysOfTheBatch.add(key)) {
+                        break;  // the next message of this businessId goes in the next batch
+                    }
+                    queue.poll();
+                    queuedCount.decrementAndGet();
+                    batch.add(queuedMessage);
+                    batchSizeInBytes += messageSizeInBytes;
+                }
+                return batch;
+            }
+        }
+
+        // Called (if the messages are delivered again in place) once the delivery of the batch has completed, before the
+        // lane delivers its next messages. The messages negatively acked by the delivery handler are put back at the head
+        // of the lane (in their order, with their redelivery count incremented) and the lane stops until their redelivery
+        // delay has elapsed. Returns the number of messages put back.
+        int redeliverInPlace(List<QueuedMessage> batch, InPlaceRedeliveries inPlaceRedeliveries) {
+            List<QueuedMessage> redeliveries = new ArrayList<>();
+            for (QueuedMessage queuedMessage : batch) {
+                Boolean counted = inPlaceRedeliveries.getRequestedRedelivery(queuedMessage.message);
+                if (counted != null) {
+                    ReceivedMessage redelivery = counted ? RedeliveredMessage.of(queuedMessage.message) : queuedMessage.message;
+                    redeliveries.add(new QueuedMessage(queuedMessage.subscriber, redelivery, queuedMessage.enqueueTimeInNanos));
+                }
+            }
+            if (redeliveries.isEmpty()) {
+                return 0;
+            }
+            waitingForRedelivery = true;    // before the messages are put back, so they are not polled by another slot
+            for (int i = redeliveries.size() - 1; i >= 0; i--) {
+                queue.addFirst(redeliveries.get(i));
+                queuedCount.incrementAndGet();
+            }
+            if (drained != null) {  // the subscription is being handed off (see drainAsync)
+                dropQueuedMessages();
+                return redeliveries.size();
+            }
+            LOGGER.debug("{} message(s) of subscription {} will be delivered again in {} ms, before the next messages of their lane",
+                    redeliveries.size(), subscriptionCode, TimeUnit.NANOSECONDS.toMillis(inPlaceRedeliveries.getDelayInNanos()));
+            try {
+                scheduler.schedule(() -> {
+                    waitingForRedelivery = false;
+                    if (! startSlotIfNeeded()) {
+                        concurrencyLimiter.wakeUpNextWaiter();
+                    }
+                }, inPlaceRedeliveries.getDelayInNanos(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {  // the application is stopping
+                LOGGER.warn("Redelivery timer rejected for subscription {}. The queued messages will be redelivered by the transport.",
+                        subscriptionCode);
+            }
+            return redeliveries.size();
+        }
+
+        // The dropped messages are left unacked, so they are redelivered by the transport once the subscriber is closed.
+        void dropQueuedMessages() {
+            int droppedCount = 0;
+            synchronized (this) {   // so a batch being polled (see pollBatch) is not dropped partially
+                while (queue.poll() != null) {
+                    queuedCount.decrementAndGet();
+                    droppedCount++;
+                }
+            }
+            if (droppedCount > 0) {
+                queueSize.addAndGet(-droppedCount);
+                queueSizeGauge.addAndGet(-droppedCount);
+                completeDrainIfEmpty();
+            }
+        }
+    }
+
+    // Subscriber given to the delivery handler if the messages are delivered again in place: the negative acks (and the
+    // postponements) are not forwarded to the transport but recorded, so the lane delivers the messages again in place
+    // (see Lane.redeliverInPlace). The other operations are forwarded to the subscriber of the transport.
+    private static class InPlaceRedeliveries implements TransportSubscriber {
+        private final TransportSubscriber subscriber;
+        private final Map<ReceivedMessage, Boolean> requestedRedeliveries = new IdentityHashMap<>();  // true if counted
+        private long delayInNanos;  // the longest of the requested delays
+
+        InPlaceRedeliveries(TransportSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        // Returns null if no redelivery has been requested for the message, otherwise true if it is counted as a redelivery
+        synchronized Boolean getRequestedRedelivery(ReceivedMessage message) {
+            return requestedRedeliveries.get(message);
+        }
+
+        synchronized long getDelayInNanos() {
+            return delayInNanos;
+        }
+
+        @Override
+        public String getTopic() {
+            return subscriber.getTopic();
+        }
+
+        @Override
+        public String getSubscriptionName() {
+            return subscriber.getSubscriptionName();
+        }
+
+        @Override
+        public void acknowledge(ReceivedMessage message) {
+            subscriber.acknowledge(RedeliveredMessage.unwrap(message));
+        }
+
+        @Override
+        public void negativeAcknowledge(ReceivedMessage message) {
+            negativeAcknowledge(message, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void negativeAcknowledge(ReceivedMessage message, long delay, TimeUnit unit) {
+            requestRedelivery(message, delay, unit, true);
+        }
+
+        @Override
+        public void postpone(ReceivedMessage message, long delay, TimeUnit unit) {
+            requestRedelivery(message, delay, unit, false);
+        }
+
+        private synchronized void requestRedelivery(ReceivedMessage message, long delay, TimeUnit unit, boolean counted) {
+            requestedRedeliveries.put(message, counted);
+            delayInNanos = Math.max(delayInNanos, unit.toNanos(Math.max(0, delay)));
+        }
+
+        @Override
+        public void pause() {
+            subscriber.pause();
+        }
+
+        @Override
+        public void resume() {
+            subscriber.resume();
+        }
+
+        @Override
+        public CompletableFuture<Void> closeAsync() {
+            return subscriber.closeAsync();
+        }
+    }
+
+    // Message delivered again in place by a lane: the message received from the transport, with its redelivery
+    // count incremented
+    private static class RedeliveredMessage implements ReceivedMessage {
+        private final ReceivedMessage message;
+        private final int redeliveryCount;
+
+        private RedeliveredMessage(ReceivedMessage message, int redeliveryCount) {
+            this.message = message;
+            this.redeliveryCount = redeliveryCount;
+        }
+
+        static ReceivedMessage of(ReceivedMessage message) {
+            return new RedeliveredMessage(unwrap(message), message.getRedeliveryCount() + 1);
+        }
+
+        // The transport only knows the messages it has received
+        static ReceivedMessage unwrap(ReceivedMessage message) {
+            return message instanceof RedeliveredMessage ? ((RedeliveredMessage) message).message : message;
+        }
+
+        @Override
+        public String getMessageId() {
+            return message.getMessageId();
+        }
+
+        @Override
+        public byte[] getData() {
+            return message.getData();
+        }
+
+        @Override
+        public String getKey() {
+            return message.getKey();
+        }
+
+        @Override
+        public Map<String, String> getProperties() {
+            return message.getProperties();
+        }
+
+        @Override
+        public String getProperty(String name) {
+            return message.getProperty(name);
+        }
+
+        @Override
+        public int getRedeliveryCount() {
+            return redeliveryCount;
+        }
+
+        @Override
+        public long getPublishTime() {
+            return message.getPublishTime();
+        }
+
+        @Override
+        public String toString() {
+            return message.toString();
+        }
+    }
+
+    // Receives a single message if batching is disabled, otherwise a batch of messages, and the current delivery plan of
+    // the subscription. Returns a future completed once the message(s) have been acked or nacked.
+    interface DeliveryHandler {
+        CompletableFuture<DeliveryOutcome> deliver(TransportSubscriber subscriber, List<ReceivedMessage> messages, DeliveryPlan deliveryPlan);
+    }
+
+    // - SUCCEEDED: the event has been delivered
+    // - CONGESTED: the delivery failed with a sign of an overloaded webhook host (read timeout, 5xx or 429 HTTP status code)
+    // - FAILED: the delivery failed otherwise (4xx HTTP status code, connection error, error of the Subscription Adapter...)
+    // - THROTTLED: the call has been rejected by the bulkhead of the webhook host in the Subscription Adapter (the host is busy)
+    // - SKIPPED: the webhook has not been called (for instance because the event has expired)
+    // The failures (CONGESTED and FAILED) are taken into account by the circuit breaker, and the congestion signals
+    // (CONGESTED and THROTTLED) by the concurrency limiter of the webhook host (see AdaptiveConcurrencyLimiter).
+    enum DeliveryOutcome {
+        SUCCEEDED, CONGESTED, FAILED, THROTTLED, SKIPPED;
+
+        boolean isFailure() {
+            return this == CONGESTED || this == FAILED;
+        }
+
+        boolean isCongestion() {
+            return this == CONGESTED || this == THROTTLED;
+        }
+
+        // Outcome of a batch from the outcomes of its events. Among the events whose webhook has been called, the batch
+        // failed if most of them failed (CONGESTED if one of them is CONGESTED), otherwise it succeeded. So a webhook
+        // which fails for most of the events of each batch is still counted as failing by the circuit breaker.
+        static DeliveryOutcome ofBatch(List<DeliveryOutcome> outcomes) {
+            int succeededCount = 0;
+            int failedCount = 0;
+            boolean congested = false;
+            boolean throttled = false;
+            for (DeliveryOutcome outcome : outcomes) {
+                if (outcome == SUCCEEDED) {
+                    succeededCount++;
+                } else if (outcome.isFailure()) {
+                    failedCount++;
+                    congested |= outcome == CONGESTED;
+                } else if (outcome == THROTTLED) {
+                    throttled = true;
+                }
+            }
+            if (succeededCount == 0 && failedCount == 0) {
+                return throttled ? THROTTLED : SKIPPED;
+            }
+            if (failedCount > succeededCount) {
+                return congested ? CONGESTED : FAILED;
+            }
+            return SUCCEEDED;
+        }
+    }
+
+    // Batch delivery settings of a subscription (batching is enabled if maxSize > 1)
+    static class BatchSettings {
+        static final BatchSettings NONE = new BatchSettings(1, 0, 0);
+
+        final int maxSize;
+        final long maxBytes;
+        final long maxLingerInNanos;
+
+        BatchSettings(int maxSize, long maxBytes, long maxLingerInMillis) {
+            this.maxSize = Math.max(1, maxSize);
+            this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+            this.maxLingerInNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLingerInMillis));
+        }
+
+        boolean isEnabled() {
+            return maxSize > 1;
+        }
+
+        @Override
+        public String toString() {
+            return isEnabled() ? String.format("{ maxSize: %d, maxBytes: %s, maxLingerInMillis: %d }", maxSize,
+                    maxBytes == Long.MAX_VALUE ? "unbounded" : String.valueOf(maxBytes), TimeUnit.NANOSECONDS.toMillis(maxLingerInNanos)) : "disabled";
+        }
+    }
+
+    private static class QueuedMessage {
+        final TransportSubscriber subscriber;
+        final ReceivedMessage message;
+        final long enqueueTimeInNanos;
+
+        QueuedMessage(TransportSubscriber subscriber, ReceivedMessage message, long enqueueTimeInNanos) {
+            this.subscriber = subscriber;
+            this.message = message;
+            this.enqueueTimeInNanos = enqueueTimeInNanos;
+        }
+    }
+}
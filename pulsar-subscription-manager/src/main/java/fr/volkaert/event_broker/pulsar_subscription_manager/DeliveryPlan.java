@@ -0,0 +1,110 @@
+package fr.volkaert.event_broker.pulsar_subscription_manager;
+
+import fr.volkaert.event_broker.model.EventType;
+import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.model.Subscription;
+
+import java.util.Objects;
+
+// Immutable per-subscription delivery settings, resolved once from the catalog (subscription, event type and defaults of
+// the BrokerConfig) instead of for each event. The plan of a subscription is held by its DeliveryDispatcher and replaced
+// as a whole (never modified) when the subscription or its event type change in the catalog (see
+// SubscriptionManagerService.refreshDeliveryPlans), so a delivery always sees a consistent set of settings.
+final class DeliveryPlan {
+
+    // Sources of the plan, only used to detect the changes in the catalog (never modified, never exposed)
+    private final Subscription subscription;
+    private final EventType eventType;
+
+    final String subscriptionCode;
+    final String eventTypeCode;
+    final boolean subscriptionActive;
+    final boolean eventTypeFound;
+    final boolean eventTypeActive;
+    final String channel;   // null if the subscription accepts all the channels
+
+    final String webhookUrl;
+    final String webhookContentType;
+    final String webhookHeaders;
+    final boolean webhookBatchItemStatusEnabled;
+    final String authMethod;
+    final String authClientId;
+    final String authClientSecret;
+    final String authScope;
+    final String secret;
+
+    // Effective values (the defaults of the BrokerConfig are used if they are not set in the subscription)
+    final long timeToLiveInSecondsForWebhookConnectionError;
+    final long timeToLiveInSecondsForWebhookReadTimeoutError;
+    final long timeToLiveInSecondsForWebhookServer5xxError;
+    final long timeToLiveInSecondsForWebhookClient4xxError;
+    final long timeToLiveInSecondsForWebhookAuth401Or403Error;
+    final long maxRedeliveryBackoffInMillis;
+
+    // The event type may be null (if it is unknown in the catalog)
+    DeliveryPlan(Subscription subscription, EventType eventType, BrokerConfig config) {
+        this.subscription = subscription;
+        this.eventType = eventType;
+
+        this.subscriptionCode = subscription.getCode();
+        this.eventTypeCode = subscription.getEventTypeCode();
+        this.subscriptionActive = subscription.isActive();
+        this.eventTypeFound = eventType != null;
+        this.eventTypeActive = eventType != null && eventType.isActive();
+        this.channel = subscription.getChannel();
+
+        this.webhookUrl = subscription.getWebhookUrl();
+        this.webhookContentType = subscription.getWebhookContentType();
+        this.webhookHeaders = subscription.getWebhookHeaders();
+        this.webhookBatchItemStatusEnabled = Boolean.TRUE.equals(subscription.getDeliveryBatchItemStatusEnabled());
+        this.authMethod = subscription.getAuthMethod();
+        this.authClientId = subscription.getAuthClientId();
+        this.authClientSecret = subscription.getAuthClientSecret();
+        this.authScope = subscription.getAuthScope();
+        this.secret = subscription.getSecret();
+
+        this.timeToLiveInSecondsForWebhookConnectionError = positiveOrDefault(
+                subscription.getTimeToLiveInSecondsForWebhookConnectionError(), config.getDefaultTimeToLiveInSecondsForWebhookConnectionError());
+        this.timeToLiveInSecondsForWebhookReadTimeoutError = positiveOrDefault(
+                subscription.getTimeToLiveInSecondsForWebhookReadTimeoutError(), config.getDefaultTimeToLiveInSecondsForWebhookReadTimeoutError());
+        this.timeToLiveInSecondsForWebhookServer5xxError = positiveOrDefault(
+                subscription.getTimeToLiveInSecondsForWebhookServer5xxError(), config.getDefaultTimeToLiveInSecondsForWebhookServer5xxError());
+        this.timeToLiveInSecondsForWebhookClient4xxError = positiveOrDefault(
+                subscription.getTimeToLiveInSecondsForWebhookClient4xxError(), config.getDefaultTimeToLiveInSecondsForWebhookClient4xxError());
+        this.timeToLiveInSecondsForWebhookAuth401Or403Error = positiveOrDefault(
+                subscription.getTimeToLiveInSecondsForWebhookAuth401Or403Error(), config.getDefaultTimeToLiveInSecondsForWebhookAuth401Or403Error());
+        this.maxRedeliveryBackoffInMillis = positiveOrDefault(
+                subscription.getMaxRedeliveryBackoffInMillis(), config.getDefaultMaxRedeliveryBackoffInMillis());
+    }
+
+    boolean isBuiltFrom(Subscription subscription, EventType eventType) {
+        return Objects.equals(this.subscription, subscription) && Objects.equals(this.eventType, eventType);
+    }
+
+    boolean matchesChannel(String eventChannel) {
+        return channel == null || channel.equalsIgnoreCase(eventChannel);
+    }
+
+    // Sets the attributes of the event needed by the Subscription Adapter to call the webhook
+    void applyTo(InflightEvent inflightEvent) {
+        inflightEvent.setWebhookUrl(webhookUrl);
+        inflightEvent.setWebhookContentType(webhookContentType);
+        inflightEvent.setWebhookHeaders(webhookHeaders);
+        inflightEvent.setWebhookBatchItemStatusEnabled(webhookBatchItemStatusEnabled);
+        inflightEvent.setAuthMethod(authMethod);
+        inflightEvent.setAuthClientId(authClientId);
+        inflightEvent.setAuthClientSecret(authClientSecret);
+        inflightEvent.setAuthScope(authScope);
+        inflightEvent.setSecret(secret);
+    }
+
+    private static long positiveOrDefault(Long value, long defaultValue) {
+        return value != null && value > 0 ? value : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ subscriptionCode: %s, eventTypeCode: %s, subscriptionActive: %s, eventTypeActive: %s, channel: %s, webhookUrl: %s }",
+                subscriptionCode, eventTypeCode, subscriptionActive, eventTypeActive, channel, webhookUrl);
+    }
+}
@@ -0,0 +1,88 @@
+package fr.volkaert.event_broker.pulsar_subscription_manager;
+
+import fr.volkaert.event_broker.model.Subscription;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Assigns the subscriptions to the instances (members) of the cluster of Subscription Managers with rendezvous hashing
+// (highest random weight) with bounded loads:
+// - each member gets a score for each subscription (hash of the member id and the subscription code), and the
+//   subscription goes to the member with the highest score, so when a member joins or leaves, only the subscriptions it
+//   wins or owned move
+// - the load of a member (sum of the weights of its subscriptions) is bounded by (1 + loadFactor) times the average load,
+//   so a subscription goes to the member with the next highest score when the first one is full
+// The assignment only depends on its inputs, so all the members compute the same assignment from the same view of the
+// cluster and of the catalog.
+class SubscriptionAssignment {
+
+    private SubscriptionAssignment() {
+    }
+
+    // Returns the member id for each subscription code. The members must not be empty.
+    static Map<String, String> assign(List<Subscription> subscriptions, List<String> members, double loadFactor) {
+        List<Subscription> sortedSubscriptions = new ArrayList<>(subscriptions);
+        // The heaviest subscriptions are assigned first (the lightest ones fill the gaps), then by code to be deterministic
+        sortedSubscriptions.sort(Comparator.comparingInt(SubscriptionAssignment::getWeight).reversed()
+                .thenComparing(Subscription::getCode));
+
+        long totalWeight = 0;
+        int maxWeight = 0;
+        for (Subscription subscription : sortedSubscriptions) {
+            totalWeight += getWeight(subscription);
+            maxWeight = Math.max(maxWeight, getWeight(subscription));
+        }
+        long capacity = Math.max(maxWeight, (long) Math.ceil(totalWeight * (1 + Math.max(0, loadFactor)) / members.size()));
+
+        Map<String, Long> loads = new HashMap<>();
+        Map<String, String> assignment = new HashMap<>();
+        for (Subscription subscription : sortedSubscriptions) {
+            String code = subscription.getCode();
+            int weight = getWeight(subscription);
+            String selectedMember = null;
+            long selectedScore = 0;
+            String leastLoadedMember = null;
+            for (String member : members) {
+                long score = score(member, code);
+                long load = loads.getOrDefault(member, 0L);
+                if (load + weight <= capacity && (selectedMember == null || Long.compareUnsigned(score, selectedScore) > 0)) {
+                    selectedMember = member;
+                    selectedScore = score;
+                }
+                if (leastLoadedMember == null || load < loads.getOrDefault(leastLoadedMember, 0L)) {
+                    leastLoadedMember = member;
+                }
+            }
+            if (selectedMember == null) {   // should not happen since capacity >= average load and >= max weight
+                selectedMember = leastLoadedMember;
+            }
+            assignment.put(code, selectedMember);
+            loads.merge(selectedMember, (long) weight, Long::sum);
+        }
+        return assignment;
+    }
+
+    static int getWeight(Subscription subscription) {
+        return subscription.getWeight() != null && subscription.getWeight() > 0 ? subscription.getWeight() : 1;
+    }
+
+    // FNV-1a over the UTF-8 bytes, then the MurmurHash3 finalizer to spread the bits. Stable across JVMs (unlike a
+    // hash depending on the JVM) and not sensitive to the order of the chars (unlike a sum of the chars).
+    static long score(String member, String subscriptionCode) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : (member + '\u0000' + subscriptionCode).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,5 +1,10 @@
 package fr.volkaert.event_broker.pulsar_subscription_manager;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.volkaert.event_broker.transport.MessagingTransport;
+import fr.volkaert.event_broker.transport.in_memory.InMemoryMessagingTransport;
+import fr.volkaert.event_broker.transport.pulsar.PulsarMessagingTransport;
+import io.netty.channel.ChannelOption;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.slf4j.Logger;
@@ -15,11 +20,22 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.event.ContextStartedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class })
 @ComponentScan("fr.volkaert")  // Required because some components/services are not in the same project !
@@ -41,12 +57,42 @@ public class SubscriptionManagerApplication {
     public void handleContextRefreshEvent(ContextStartedEvent ctxStartedEvt) {  subscriptionManagerService.start(); }
 
     @Bean
-    PulsarClient createPulsarClient() throws PulsarClientException {
+    MessagingTransport createMessagingTransport() throws PulsarClientException {
+        if (InMemoryMessagingTransport.NAME.equalsIgnoreCase(config.getTransport())) {
+            LOGGER.warn("Using the in-memory messaging transport: the events are NOT persisted (use it only for tests and benchmarks)");
+            return new InMemoryMessagingTransport(config.getPulsarListenerThreadCount());
+        }
         PulsarClient pulsarClient = PulsarClient.builder()
                 .serviceUrl(config.getPulsarServiceUrl())
                 .listenerThreads(config.getPulsarListenerThreadCount())
                 .build();
-        return pulsarClient;
+        return new PulsarMessagingTransport(pulsarClient);
+    }
+
+    // Shared by all the subscriptions (see DeliveryDispatcher). With the blocking RestTemplate (asynchronous delivery
+    // disabled), each webhook call holds a thread during the call.
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("DeliveryExecutor")
+    public ExecutorService deliveryExecutor() {
+        LOGGER.info("Delivery worker thread count: {}", config.getDeliveryWorkerThreadCount());
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(config.getDeliveryWorkerThreadCount(), runnable -> {
+            Thread thread = new Thread(runnable, "delivery-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Triggers the delivery of the incomplete batches once their linger time has elapsed, and the half-opening of the
+    // open circuits (see DeliveryDispatcher)
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("DeliveryScheduler")
+    public ScheduledExecutorService deliveryScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "delivery-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Bean
@@ -62,4 +108,34 @@ public class SubscriptionManagerApplication {
         restTemplate.getMessageConverters().add(0, new StringHttpMessageConverter(StandardCharsets.UTF_8));
         return restTemplate;
     }
+
+    // Used if broker.asynchronous-delivery-enabled is true (see SubscriptionManagerService.callSubscriptionAdapterAsync())
+    @Bean
+    @Qualifier("WebClientBuilderForSubscriptionAdapter")
+    @LoadBalanced
+    public WebClient.Builder webClientBuilderForSubscriptionAdapter(ObjectMapper objectMapper) {
+        LOGGER.info("Connection pool for Subscription Adapter: maxConnections={}, pendingAcquireTimeout={}",
+                config.getMaxConnectionsToSubscriptionAdapter(), config.getPendingAcquireTimeoutInSecondsForSubscriptionAdapter());
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("subscription-adapter")
+                .maxConnections(config.getMaxConnectionsToSubscriptionAdapter())
+                .pendingAcquireTimeout(Duration.ofSeconds(config.getPendingAcquireTimeoutInSecondsForSubscriptionAdapter()))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .tcpConfiguration(tcpClient -> tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                        (int) Duration.ofSeconds(config.getConnectTimeoutInSecondsForSubscriptionAdapter()).toMillis()));
+        // The read timeout is applied to each call (see SubscriptionManagerService.callSubscriptionAdapterAsync())
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(configurer -> {
+                    configurer.defaultCodecs().maxInMemorySize(config.getMaxInMemorySizeInBytesForSubscriptionAdapter());
+                    configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper, MediaType.APPLICATION_JSON));
+                    configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper, MediaType.APPLICATION_JSON));
+                });
+    }
+
+    @Bean
+    @Qualifier("WebClientForSubscriptionAdapter")
+    public WebClient webClientForSubscriptionAdapter(@Qualifier("WebClientBuilderForSubscriptionAdapter") WebClient.Builder builder) {
+        return builder.build();
+    }
 }
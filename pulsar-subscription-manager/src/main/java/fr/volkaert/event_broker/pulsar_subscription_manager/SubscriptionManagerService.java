@@ -1,19 +1,33 @@
 package fr.volkaert.event_broker.pulsar_subscription_manager;
 
 import fr.volkaert.event_broker.catalog_client.CatalogClient;
+import fr.volkaert.event_broker.encoding.InflightEventCodec;
+import fr.volkaert.event_broker.encoding.InflightEventCodecs;
+import fr.volkaert.event_broker.encoding.InflightEventHeaders;
 import fr.volkaert.event_broker.error.BrokerException;
+import fr.volkaert.event_broker.model.DeliveryResult;
 import fr.volkaert.event_broker.model.EventType;
 import fr.volkaert.event_broker.model.InflightEvent;
 import fr.volkaert.event_broker.model.Subscription;
 import fr.volkaert.event_broker.telemetry.TelemetryService;
-import org.apache.pulsar.client.api.*;
-import org.apache.pulsar.client.api.schema.SchemaDefinition;
-import org.apache.pulsar.client.internal.DefaultImplementation;
+import fr.volkaert.event_broker.transport.MessagingTransport;
+import fr.volkaert.event_broker.transport.OutgoingMessage;
+import fr.volkaert.event_broker.transport.PublisherSettings;
+import fr.volkaert.event_broker.transport.ReceivedMessage;
+import fr.volkaert.event_broker.transport.SubscriberSettings;
+import fr.volkaert.event_broker.transport.SubscriptionType;
+import fr.volkaert.event_broker.transport.TransportPublisher;
+import fr.volkaert.event_broker.transport.TransportSubscriber;
+import fr.volkaert.event_broker.util.ConcurrentResourceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -22,11 +36,30 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
+
+import javax.annotation.PostConstruct;
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
 
 @Service
 @Configuration
@@ -40,154 +73,462 @@ public class SubscriptionManagerService {
     CatalogClient catalog;
 
     @Autowired
-    PulsarClient pulsar;
+    MessagingTransport transport;
 
     @Autowired
     @Qualifier("RestTemplateForSubscriptionAdapter")
     RestTemplate restTemplate;
 
-    Map<String, Consumer> subscriptionCodeToPulsarConsumerMap = new HashMap<>();
-    Map<String, Producer> eventTypeCodeToPulsarProducerForDLQMap = new HashMap<>();
+    @Autowired
+    @Qualifier("WebClientForSubscriptionAdapter")
+    WebClient webClient;
+
+    @Autowired
+    @Qualifier("DeliveryExecutor")
+    ExecutorService deliveryExecutor;
+
+    @Autowired
+    @Qualifier("DeliveryScheduler")
+    ScheduledExecutorService deliveryScheduler;
+
+    @Autowired
+    DiscoveryClient discoveryClient;
+
+    @Autowired(required = false)
+    Registration registration;  // null if the registration in Eureka is disabled
+
+    ConcurrentResourceRegistry<String, TransportSubscriber> subscriptionCodeToSubscriberRegistry;
+    ConcurrentResourceRegistry<String, TransportPublisher> topicNameToPublisherForDLQRegistry;
+    final Map<String, DeliveryDispatcher> subscriptionCodeToDeliveryDispatcher = new ConcurrentHashMap<>();
+    // Shared by the subscriptions whose webhook is on the same host (see AdaptiveConcurrencyLimiter)
+    private final Map<String, AdaptiveConcurrencyLimiter> webhookHostToConcurrencyLimiter = new ConcurrentHashMap<>();
+    private volatile List<String> lastClusterMembers;   // only used to log the changes of the cluster
+
+    // The events recorded in the DLQ are always JSON encoded (whatever the encoding of their topic) to be readable by a human
+    private final InflightEventCodec codecForDLQ = InflightEventCodecs.JSON;
 
     @Autowired
     TelemetryService telemetryService;
 
+    private static final ParameterizedTypeReference<DeliveryResult> DELIVERY_RESULT_TYPE = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<List<DeliveryResult>> DELIVERY_RESULT_LIST_TYPE = new ParameterizedTypeReference<>() {};
+
     private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionManagerService.class);
 
+    @PostConstruct
+    public void init() {
+        Duration minBackoff = Duration.ofMillis(config.getMinBackoffInMillisForPulsarClientCreation());
+        Duration maxBackoff = Duration.ofMillis(config.getMaxBackoffInMillisForPulsarClientCreation());
+        subscriptionCodeToSubscriberRegistry = new ConcurrentResourceRegistry<>(minBackoff, maxBackoff);
+        topicNameToPublisherForDLQRegistry = new ConcurrentResourceRegistry<>(minBackoff, maxBackoff);
+    }
+
     public void start() {
         LOGGER.info("Subscription service started");
-        createPulsarConsumers();
+        refreshSubscribers();
     }
 
-    @Scheduled(fixedDelay = 60000)
+    // Creates the subscribers of the subscriptions managed by this instance and hands off (see releaseSubscriber) the
+    // subscriptions now managed by another instance of the cluster (because an instance joined or left the cluster).
+    // The delivery plans of the existing subscribers are also refreshed (see refreshDeliveryPlans).
+    @Scheduled(fixedDelayString = "${broker.subscribers-refresh-interval-in-millis:10000}")
     // *** NEVER LET AN EXCEPTION BE RAISED/THROWN BY THIS OPERATION !!! ***
-    public void createPulsarConsumers() {
+    public void refreshSubscribers() {
         try {
-            LOGGER.info("Loading subscriptions from the catalog...");
+            LOGGER.debug("Loading subscriptions from the catalog...");
             List<Subscription> subscriptions = catalog.getSubscriptions();
-            LOGGER.info("Subscriptions successfully loaded from the catalog...");
-
-            if (subscriptions != null && ! subscriptions.isEmpty()) {
-                LOGGER.info("Creating Pulsar consumers...");
-                for (Subscription subscription : subscriptions) {
-                    try {
-                        String eventTypeCode = subscription.getEventTypeCode();
-                        if (shouldTheEventBeManagedByThisInstanceOfSubscriptionManager(eventTypeCode)) {
-                            getPulsarConsumer(eventTypeCode, subscription.getCode());
-                        }
-                    } catch (Exception ex) {  // if there is an issue with a subscription, continue with the others...
-                        // No need to log the error since it has already been logged in getPulsarConsumer()
-                    }
+            LOGGER.debug("Subscriptions successfully loaded from the catalog...");
+            if (subscriptions == null) {
+                subscriptions = new ArrayList<>();
+            }
+
+            Set<String> managedSubscriptionCodes = getSubscriptionCodesManagedByThisInstance(subscriptions);
+
+            for (TransportSubscriber subscriber : subscriptionCodeToSubscriberRegistry.values()) {
+                if (! managedSubscriptionCodes.contains(subscriber.getSubscriptionName())) {
+                    releaseSubscriber(subscriber);
                 }
-                LOGGER.info("End of Pulsar consumers creation");
             }
+
+            List<CompletableFuture<TransportSubscriber>> subscriberFutures = new ArrayList<>();
+            for (Subscription subscription : subscriptions) {
+                if (managedSubscriptionCodes.contains(subscription.getCode())) {
+                    // if there is an issue with a subscription, continue with the others...
+                    // No need to log the error since it has already been logged in createSubscriberAsync()
+                    subscriberFutures.add(getSubscriberAsync(subscription)
+                            .exceptionally(ex -> null));
+                }
+            }
+            CompletableFuture.allOf(subscriberFutures.toArray(new CompletableFuture[0])).join();
+
+            refreshDeliveryPlans(subscriptions);
         }
         catch (Exception ex) {
-            LOGGER.error("Error while loading subscriptions from the catalog. Pulsar consumers may not have been successfully created.", ex);
+            LOGGER.error("Error while loading subscriptions from the catalog. Subscribers may not have been successfully created.", ex);
         }
     }
 
-    private synchronized Consumer<InflightEvent> getPulsarConsumer(String eventTypeCode, String subscriptionCode) {
-        Consumer<InflightEvent> consumer = subscriptionCodeToPulsarConsumerMap.computeIfAbsent(subscriptionCode, x -> {
+    // The plan of a subscription is replaced if the subscription or its event type changed in the catalog. The settings
+    // read when the subscriber is created (concurrency, order, batch, subscription type) are not part of the plan.
+    private void refreshDeliveryPlans(List<Subscription> subscriptions) {
+        for (Subscription subscription : subscriptions) {
+            DeliveryDispatcher dispatcher = subscriptionCodeToDeliveryDispatcher.get(subscription.getCode());
+            if (dispatcher == null) {
+                continue;
+            }
             try {
-                LOGGER.info("Creating Pulsar consumer for eventTypeCode {} and subscriptionCode {}", eventTypeCode, subscriptionCode);
-                //Schema<InflightEvent> schema = Schema.JSON(InflightEvent.class);
-                Schema<InflightEvent> schema = DefaultImplementation.newJSONSchema(SchemaDefinition.builder().withJSR310ConversionEnabled(true).withPojo(InflightEvent.class).build());
-                Consumer<InflightEvent> c = pulsar.newConsumer(schema)
-                        .topic(eventTypeCode)
-                        .subscriptionName(subscriptionCode)
-                        .subscriptionType(SubscriptionType.Failover)
-                        //.ackTimeout(config.getReadTimeoutInSecondsForSubscriptionAdapter(), TimeUnit.SECONDS)
-                        .messageListener((cons, msg) ->  {
-                            try {
-                                handlePulsarMessageAndAck(cons, msg);
-                            } catch (Exception ex) {    // should never happen...
-                                LOGGER.error("Error while handling Pulsar message", ex);
-                            }
-                        })
-                        .subscribe();
-                if (c != null) {
-                    LOGGER.info("Pulsar consumer created for eventTypeCode {} and subscriptionCode {}", eventTypeCode, subscriptionCode);
+                EventType eventType = catalog.getEventType(subscription.getEventTypeCode());
+                if (! dispatcher.getDeliveryPlan().isBuiltFrom(subscription, eventType)) {
+                    DeliveryPlan deliveryPlan = new DeliveryPlan(subscription, eventType, config);
+                    dispatcher.setDeliveryPlan(deliveryPlan);
+                    LOGGER.info("Delivery plan of subscriptionCode {} updated. Plan is {}.", subscription.getCode(), deliveryPlan);
                 }
-                return c;
-            } catch (Exception ex) {
-                String msg = String.format("Error while creating a Pulsar consumer for eventTypeCode %s and subscriptionCode %s",
-                        eventTypeCode, subscriptionCode);
-                LOGGER.error(msg, ex);
-                return null;
+            } catch (Exception ex) {    // the current plan is kept
+                LOGGER.error("Error while refreshing the delivery plan of subscriptionCode {}", subscription.getCode(), ex);
+            }
+        }
+    }
+
+    // The "shared" and "key_shared" subscriptions are managed by all the instances. The "failover" subscriptions are
+    // assigned to the instances of the cluster (see SubscriptionAssignment).
+    // Two instances may briefly disagree on the assignment (while the Eureka registry is propagated), but it is harmless
+    // since a failover subscription has only one active consumer anyway.
+    private Set<String> getSubscriptionCodesManagedByThisInstance(List<Subscription> subscriptions) {
+        Set<String> managedSubscriptionCodes = new HashSet<>();
+        List<Subscription> failoverSubscriptions = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            if (getSubscriptionType(subscription) == SubscriptionType.FAILOVER) {
+                failoverSubscriptions.add(subscription);
+            } else {
+                managedSubscriptionCodes.add(subscription.getCode());
+            }
+        }
+
+        String thisMember = getThisClusterMember();
+        List<String> members = getClusterMembers(thisMember);
+        Map<String, String> assignment = SubscriptionAssignment.assign(failoverSubscriptions, members, config.getClusterLoadFactor());
+        assignment.forEach((subscriptionCode, member) -> {
+            if (member.equals(thisMember)) {
+                managedSubscriptionCodes.add(subscriptionCode);
             }
         });
-        if (consumer == null) {
-            // No Need to log the error since it has already been logged in subscriptionCodeToPulsarConsumerMap.computeIfAbsent
-            String msg = String.format("Error while creating a Pulsar consumer for eventTypeCode %s and subscriptionCode %s",
-                    eventTypeCode, subscriptionCode);
-            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+
+        if (! members.equals(lastClusterMembers)) {
+            LOGGER.info("Cluster members are {}. This instance ({}) manages {} of the {} failover subscriptions.",
+                    members, thisMember, managedSubscriptionCodes.size() - (subscriptions.size() - failoverSubscriptions.size()),
+                    failoverSubscriptions.size());
+            lastClusterMembers = members;
+        }
+        return managedSubscriptionCodes;
+    }
+
+    private String getThisClusterMember() {
+        if (isClusterMembershipFromEureka()) {
+            return registration.getInstanceId();
+        }
+        return String.valueOf(config.getClusterIndex());
+    }
+
+    // Sorted, and always contains this instance (even if it is not registered in Eureka yet)
+    private List<String> getClusterMembers(String thisMember) {
+        Set<String> members = new TreeSet<>();
+        members.add(thisMember);
+        if (isClusterMembershipFromEureka()) {
+            for (ServiceInstance instance : discoveryClient.getInstances(registration.getServiceId())) {
+                if (instance.getInstanceId() != null) {
+                    members.add(instance.getInstanceId());
+                }
+            }
+        } else {
+            for (int i = 0; i < config.getClusterSize(); i++) {
+                members.add(String.valueOf(i));
+            }
         }
-        return consumer;
+        return new ArrayList<>(members);
+    }
+
+    private boolean isClusterMembershipFromEureka() {
+        return "eureka".equalsIgnoreCase(config.getClusterMembership()) && registration != null;
+    }
+
+    // The subscriber is paused and closed once the events already received have been delivered (or after a timeout),
+    // so the unacked events are redelivered by the messaging transport to the instance that now manages the subscription.
+    private void releaseSubscriber(TransportSubscriber subscriber) {
+        String subscriptionCode = subscriber.getSubscriptionName();
+        if (! subscriptionCodeToSubscriberRegistry.remove(subscriptionCode, subscriber)) {
+            return; // already released
+        }
+        LOGGER.info("Handing off subscription {} to another instance of the cluster", subscriptionCode);
+        DeliveryDispatcher dispatcher = subscriptionCodeToDeliveryDispatcher.remove(subscriptionCode);
+        CompletableFuture<Void> drained = dispatcher != null ? dispatcher.drainAsync(subscriber) : CompletableFuture.completedFuture(null);
+        drained.orTimeout(config.getSubscriberHandoffTimeoutInSeconds(), TimeUnit.SECONDS)
+                .handle((x, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.warn("Timeout while waiting for the deliveries in progress of subscription {}. Its unacked events will be redelivered.",
+                                subscriptionCode);
+                        if (dispatcher != null) {
+                            dispatcher.abandon();
+                        }
+                    }
+                    return subscriber.closeAsync();
+                })
+                .thenCompose(closed -> closed)
+                .whenComplete((x, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.error("Error while closing the subscriber of subscription {}", subscriptionCode, throwable);
+                    } else {
+                        LOGGER.info("Subscription {} handed off", subscriptionCode);
+                    }
+                });
     }
 
+    // Lock-free once the subscriber exists. Only one subscriber is created at a time per subscription, and a failed
+    // creation is retried (after a backoff) by a later call.
+    // The delivery settings of the subscription (concurrency and order) are read when the subscriber is created.
+    private CompletableFuture<TransportSubscriber> getSubscriberAsync(Subscription subscription) {
+        return subscriptionCodeToSubscriberRegistry.getAsync(subscription.getCode(),
+                x -> createSubscriberAsync(subscription));
+    }
+
+    private CompletableFuture<TransportSubscriber> createSubscriberAsync(Subscription subscription) {
+        String eventTypeCode = subscription.getEventTypeCode();
+        String subscriptionCode = subscription.getCode();
+        int deliveryConcurrency = subscription.getDeliveryConcurrency() != null && subscription.getDeliveryConcurrency() > 0 ?
+                subscription.getDeliveryConcurrency() : config.getDefaultDeliveryConcurrency();
+        boolean deliveryOrderedByBusinessId = Boolean.TRUE.equals(subscription.getDeliveryOrderedByBusinessId());
+        SubscriptionType subscriptionType = getSubscriptionType(subscription);
+        DeliveryDispatcher.BatchSettings batchSettings = getDeliveryBatchSettings(subscription);
+        DeliveryPlan deliveryPlan = new DeliveryPlan(subscription, catalog.getEventType(eventTypeCode), config);
+        LOGGER.info("Creating {} subscriber for eventTypeCode {} and subscriptionCode {} (subscription type is {}, delivery concurrency is {}, ordered by businessId is {}, batch is {})",
+                transport.getName(), eventTypeCode, subscriptionCode, subscriptionType, deliveryConcurrency, deliveryOrderedByBusinessId, batchSettings);
+
+        // The listener threads of the transport only dispatch the messages to the delivery workers
+        DeliveryCircuitBreaker circuitBreaker = new DeliveryCircuitBreaker(subscriptionCode, config.getCircuitBreakerFailureThreshold(),
+                config.getCircuitBreakerOpenDurationInMillis(), telemetryService);
+        AdaptiveConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter(subscription);
+        // A failed event is redelivered in place (instead of through the retry topic) only to keep an order: a shared
+        // subscription has no order to keep
+        boolean redeliveredInPlace = deliveryOrderedByBusinessId && subscriptionType != SubscriptionType.SHARED;
+        DeliveryDispatcher dispatcher = new DeliveryDispatcher(subscriptionCode, deliveryConcurrency, deliveryOrderedByBusinessId, redeliveredInPlace,
+                config.getMaxQueuedDeliveriesPerSubscription(), batchSettings, circuitBreaker, concurrencyLimiter, deliveryExecutor, deliveryScheduler,
+                deliveryPlan, batchSettings.isEnabled() ? this::handleBatchAndAckAsync :
+                        (subscriber, messages, plan) -> handleMessageAndAckAsync(subscriber, messages.get(0), plan),
+                telemetryService);
+        subscriptionCodeToDeliveryDispatcher.put(subscriptionCode, dispatcher);
+
+        // The events are read as bytes and decoded by the InflightEventCodec given by the message (see handleMessageAndAckAsync)
+        SubscriberSettings settings = new SubscriberSettings(eventTypeCode, subscriptionCode);
+        settings.setSubscriptionType(subscriptionType);
+        return transport.subscribeAsync(settings, dispatcher::dispatch)
+                .whenComplete((subscriber, throwable) -> {
+                    if (throwable != null) {
+                        String msg = String.format("Error while creating a %s subscriber for eventTypeCode %s and subscriptionCode %s",
+                                transport.getName(), eventTypeCode, subscriptionCode);
+                        LOGGER.error(msg, throwable);
+                    } else {
+                        LOGGER.info("{} subscriber created for eventTypeCode {} and subscriptionCode {}", transport.getName(), eventTypeCode, subscriptionCode);
+                    }
+                });
+    }
+
+    // The returned future is completed once the message has been acked or nacked (it is never completed exceptionally).
     // *** NEVER LET AN EXCEPTION BE RAISED/THROWN BY THIS OPERATION !!! ***
-    private void handlePulsarMessageAndAck(Consumer<InflightEvent> consumer, Message<InflightEvent> message) {
+    private CompletableFuture<DeliveryDispatcher.DeliveryOutcome> handleMessageAndAckAsync(TransportSubscriber subscriber, ReceivedMessage message,
+                                                                                         DeliveryPlan deliveryPlan) {
         Instant deliveryStart = Instant.now();
 
         InflightEvent inflightEvent = null;
 
         try {
-            LOGGER.debug("Message received from Pulsar. Message is {}.", new String(message.getData()));
+            inflightEvent = readEvent(subscriber, message);
 
-            inflightEvent = message.getValue();
+            boolean shouldContinue = checkConditionsForEventDeliveryAreMetOrAbort(inflightEvent, subscriber, message, deliveryStart, deliveryPlan);
+            if (! shouldContinue) {
+                return CompletableFuture.completedFuture(DeliveryDispatcher.DeliveryOutcome.SKIPPED); // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+            }
 
-            String subscriptionCode = consumer.getSubscription();
-            inflightEvent.setSubscriptionCode(subscriptionCode);
+            inflightEvent = decodeEventIfNeeded(message, inflightEvent);
 
-            telemetryService.eventDeliveryRequested(inflightEvent);
+            deliveryPlan.applyTo(inflightEvent);
 
-            // Strange: message.getRedeliveryCount() is always 0 !!!
-            LOGGER.warn("********** message.getRedeliveryCount() is always 0 !!! **********: {}", message.getRedeliveryCount());
-            inflightEvent.setRedelivered(message.getRedeliveryCount() >= 1);
-            inflightEvent.setRedeliveryCount(message.getRedeliveryCount());
+            telemetryService.eventDeliveryAttempted(inflightEvent);
+            InflightEvent sentInflightEvent = inflightEvent;
+            BiFunction<DeliveryResult, Throwable, DeliveryDispatcher.DeliveryOutcome> responseHandler = (deliveryResult, throwable) ->
+                    handleSubscriptionAdapterResponse(subscriber, message, sentInflightEvent, deliveryResult, throwable,
+                            deliveryStart, deliveryPlan);
+            CompletableFuture<DeliveryResult> response = callSubscriptionAdapterAsync(inflightEvent);
+            // The response of an asynchronous call is handled by a delivery worker, not by an I/O thread of the WebClient
+            return response.isDone() ? response.handle(responseHandler) : response.handleAsync(responseHandler, deliveryExecutor);
 
-            LOGGER.debug("Event received from Pulsar. Event is {}.", inflightEvent.cloneWithoutSensitiveData());
+        } catch (Exception ex) {    // a global catch is mandatory because no exception should be raised/thrown by this operation !
+            handleUnexpectedDeliveryError(subscriber, message, inflightEvent, ex, deliveryStart);
+            return CompletableFuture.completedFuture(DeliveryDispatcher.DeliveryOutcome.SKIPPED);
+        }
+    }
 
-            boolean shouldContinue = checkConditionsForEventDeliveryAreMetOrAbort(inflightEvent, consumer, message, deliveryStart);
-            if (! shouldContinue) {
-                return; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+    // Batch delivery (see Subscription.deliveryBatchMaxSize): the events that can be delivered are sent in a single call
+    // to the Subscription Adapter, then each message is acked or nacked according to the HTTP status of its event.
+    // The returned future is completed once all the messages have been acked or nacked (it is never completed exceptionally).
+    // *** NEVER LET AN EXCEPTION BE RAISED/THROWN BY THIS OPERATION !!! ***
+    private CompletableFuture<DeliveryDispatcher.DeliveryOutcome> handleBatchAndAckAsync(TransportSubscriber subscriber, List<ReceivedMessage> messages,
+                                                                                       DeliveryPlan deliveryPlan) {
+        Instant deliveryStart = Instant.now();
+
+        List<ReceivedMessage> messagesToDeliver = new ArrayList<>(messages.size());
+        List<InflightEvent> inflightEventsToDeliver = new ArrayList<>(messages.size());
+
+        for (ReceivedMessage message : messages) {
+            InflightEvent inflightEvent = null;
+            try {
+                inflightEvent = readEvent(subscriber, message);
+
+                boolean shouldContinue = checkConditionsForEventDeliveryAreMetOrAbort(inflightEvent, subscriber, message, deliveryStart, deliveryPlan);
+                if (! shouldContinue) {
+                    continue; // *** PAY ATTENTION, THERE IS A CONTINUE HERE !!! ***
+                }
+
+                inflightEvent = decodeEventIfNeeded(message, inflightEvent);
+
+                deliveryPlan.applyTo(inflightEvent);
+
+                telemetryService.eventDeliveryAttempted(inflightEvent);
+                messagesToDeliver.add(message);
+                inflightEventsToDeliver.add(inflightEvent);
+
+            } catch (Exception ex) {    // a global catch is mandatory because no exception should be raised/thrown by this operation !
+                handleUnexpectedDeliveryError(subscriber, message, inflightEvent, ex, deliveryStart);
             }
+        }
 
-            Subscription subscription = catalog.getSubscription(subscriptionCode);
+        if (messagesToDeliver.isEmpty()) {
+            return CompletableFuture.completedFuture(DeliveryDispatcher.DeliveryOutcome.SKIPPED); // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+        }
 
-            inflightEvent.setWebhookUrl(subscription.getWebhookUrl());
-            inflightEvent.setWebhookContentType(subscription.getWebhookContentType());
-            inflightEvent.setWebhookHeaders(subscription.getWebhookHeaders());
-            inflightEvent.setAuthMethod(subscription.getAuthMethod());
-            inflightEvent.setAuthClientId(subscription.getAuthClientId());
-            inflightEvent.setAuthClientSecret(subscription.getAuthClientSecret());
-            inflightEvent.setAuthScope(subscription.getAuthScope());
-            inflightEvent.setSecret(subscription.getSecret());
+        try {
+            BiFunction<List<DeliveryResult>, Throwable, DeliveryDispatcher.DeliveryOutcome> responseHandler = (deliveryResults, throwable) ->
+                    handleSubscriptionAdapterResponseForBatch(subscriber, messagesToDeliver, inflightEventsToDeliver,
+                            deliveryResults, throwable, deliveryStart, deliveryPlan);
+            CompletableFuture<List<DeliveryResult>> response = callSubscriptionAdapterWithBatchAsync(inflightEventsToDeliver);
+            // The response of an asynchronous call is handled by a delivery worker, not by an I/O thread of the WebClient
+            return response.isDone() ? response.handle(responseHandler) : response.handleAsync(responseHandler, deliveryExecutor);
 
-            telemetryService.eventDeliveryAttempted(inflightEvent);
-            try {
-                inflightEvent = callSubscriptionAdapter(inflightEvent);
-            } catch (Exception ex) {
-                // No Need to log the error since it has already been logged in callSubscriptionAdapter()
+        } catch (Exception ex) {    // a global catch is mandatory because no exception should be raised/thrown by this operation !
+            for (int i = 0; i < messagesToDeliver.size(); i++) {
+                handleUnexpectedDeliveryError(subscriber, messagesToDeliver.get(i), inflightEventsToDeliver.get(i), ex, deliveryStart);
+            }
+            return CompletableFuture.completedFuture(DeliveryDispatcher.DeliveryOutcome.SKIPPED);
+        }
+    }
+
+    // The outcome of the batch is a failure if most of its delivered events failed (see DeliveryOutcome.ofBatch).
+    // *** NEVER LET AN EXCEPTION BE RAISED/THROWN BY THIS OPERATION !!! ***
+    private DeliveryDispatcher.DeliveryOutcome handleSubscriptionAdapterResponseForBatch(TransportSubscriber subscriber, List<ReceivedMessage> messages,
+                                                           List<InflightEvent> sentInflightEvents, List<DeliveryResult> deliveryResults,
+                                                           Throwable throwable, Instant deliveryStart, DeliveryPlan deliveryPlan) {
+        if (throwable == null && (deliveryResults == null || deliveryResults.size() != sentInflightEvents.size())) {
+            String msg = String.format("The Subscription Adapter returned %s results for a batch of %d events (the whole batch is negatively acked)",
+                    deliveryResults != null ? deliveryResults.size() : "no", sentInflightEvents.size());
+            LOGGER.error(msg);
+            throwable = new BrokerException(HttpStatus.BAD_GATEWAY, msg);
+        }
+        List<DeliveryDispatcher.DeliveryOutcome> outcomes = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            outcomes.add(handleSubscriptionAdapterResponse(subscriber,
+                    messages.get(i), sentInflightEvents.get(i), throwable == null ? deliveryResults.get(i) : null,
+                    throwable, deliveryStart, deliveryPlan));
+        }
+        return DeliveryDispatcher.DeliveryOutcome.ofBatch(outcomes);
+    }
+
+    // Reads the event from the properties of the message if they contain its headers (see InflightEventHeaders): the
+    // payload is not decoded, so the returned event must be completed by decodeEventIfNeeded before being delivered.
+    // The messages published before the introduction of the headers are fully decoded.
+    // This operation can throw an exception.
+    private InflightEvent readEvent(TransportSubscriber subscriber, ReceivedMessage message) {
+        InflightEvent inflightEvent = InflightEventHeaders.fromProperties(message.getProperties());
+        if (inflightEvent != null) {
+            LOGGER.debug("Message received from {}. Message id is {}, event read from its headers.", transport.getName(), message.getMessageId());
+        } else {
+            inflightEvent = decodeEvent(message);
+        }
+
+        String subscriptionCode = subscriber.getSubscriptionName();
+        setSubscriptionAttributes(inflightEvent, subscriptionCode, message);
+
+        telemetryService.eventDeliveryRequested(inflightEvent);
+
+        LOGGER.debug("Event received from {}. Event is {}.", transport.getName(), inflightEvent.cloneWithoutSensitiveData());
+        return inflightEvent;
+    }
+
+    // Decodes the whole event if it has been read from the headers of the message (the creation date is never in the
+    // headers, so an event with a creation date has already been decoded). This operation can throw an exception.
+    private InflightEvent decodeEventIfNeeded(ReceivedMessage message, InflightEvent inflightEvent) {
+        if (inflightEvent.getCreationDate() != null) {
+            return inflightEvent;
+        }
+        InflightEvent decodedInflightEvent = decodeEvent(message);
+        setSubscriptionAttributes(decodedInflightEvent, inflightEvent.getSubscriptionCode(), message);
+        return decodedInflightEvent;
+    }
+
+    private InflightEvent decodeEvent(ReceivedMessage message) {
+        InflightEventCodec codec = InflightEventCodecs.forMessage(message.getData(), message.getProperties());
+        LOGGER.debug("Message received from {}. Message id is {}, encoding is {}.", transport.getName(), message.getMessageId(), codec.getName());
+        return codec.decode(message.getData());
+    }
+
+    private void setSubscriptionAttributes(InflightEvent inflightEvent, String subscriptionCode, ReceivedMessage message) {
+        inflightEvent.setSubscriptionCode(subscriptionCode);
+        inflightEvent.setRedelivered(message.getRedeliveryCount() >= 1);
+        inflightEvent.setRedeliveryCount(message.getRedeliveryCount());
+    }
+
+    // Called once the Subscription Adapter has responded (or failed). `throwable` is null if the call succeeded.
+    // The returned outcome is taken into account by the circuit breaker of the subscription (see DeliveryCircuitBreaker).
+    // *** NEVER LET AN EXCEPTION BE RAISED/THROWN BY THIS OPERATION !!! ***
+    private DeliveryDispatcher.DeliveryOutcome handleSubscriptionAdapterResponse(TransportSubscriber subscriber, ReceivedMessage message,
+                                                   InflightEvent sentInflightEvent, DeliveryResult deliveryResult,
+                                                   Throwable throwable, Instant deliveryStart, DeliveryPlan deliveryPlan) {
+        InflightEvent inflightEvent = sentInflightEvent;
+
+        try {
+            if (throwable != null) {
+                Exception ex = toException(throwable);
+                if (isRejectedByWebhookBulkhead(ex)) {
+                    // The webhook has not been called, so this is not a webhook failure (it does not count for the
+                    // circuit breaker) but the host is busy (so the concurrency limiter of the host backs off). The event
+                    // is redelivered after a short fixed delay, without counting a redelivery (so without a longer backoff).
+                    LOGGER.warn("Postponement (due to busy webhook host) for message {}. Event is {}.",
+                            message.getMessageId(), inflightEvent.toShortLog());
+                    subscriber.postpone(message, config.getBusyWebhookHostRedeliveryDelayInMillis(), TimeUnit.MILLISECONDS);
+                    telemetryService.eventDeliveryPostponedDueToBusyWebhookHost(inflightEvent);
+                    return DeliveryDispatcher.DeliveryOutcome.THROTTLED; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+                }
+                // No Need to log the error since it has already been logged in callSubscriptionAdapterAsync()
                 LOGGER.warn("Negative ack (due to exception while calling the Subscription Adapter) for message {}. Event is {}.",
                         message.getMessageId(), inflightEvent.toShortLog());
-                consumer.negativeAcknowledge(message);
+                negativeAcknowledgeWithBackoff(subscriber, message, deliveryPlan);
                 telemetryService.eventDeliveryFailed(inflightEvent, ex, deliveryStart);
-                return; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+                return DeliveryDispatcher.DeliveryOutcome.FAILED; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
             }
 
+            // The Subscription Adapter only returns the result of the delivery, which is merged into the sent event
+            deliveryResult.applyTo(inflightEvent);
+            LOGGER.debug("Delivery result returned by the Subscription Adapter: {}. Event is {}.", deliveryResult, inflightEvent.toShortLog());
+
             if (inflightEvent.isWebhookConnectionErrorOccurred() ||
                     inflightEvent.isWebhookReadTimeoutErrorOccurred() ||
                     inflightEvent.isWebhookServer5xxErrorOccurred() ||
                     inflightEvent.isWebhookClient4xxErrorOccurred()) {
                 try {
-                    handleWebhookErrorOccurred(inflightEvent, consumer, message, deliveryStart, subscription);
+                    handleWebhookErrorOccurred(inflightEvent, subscriber, message, deliveryStart, deliveryPlan);
                 } catch (Exception ex) {
                     LOGGER.error("Error while handling a webhook error", ex);
                 }
                 telemetryService.eventDeliveryFailed(inflightEvent, null, deliveryStart);
-                return; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+                return isWebhookHostCongested(inflightEvent) ?
+                        DeliveryDispatcher.DeliveryOutcome.CONGESTED : DeliveryDispatcher.DeliveryOutcome.FAILED; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
             }
 
             // The following lines handle the special case where the webhook returned a 3xx HTTP status code (Redirect)
@@ -196,94 +537,89 @@ public class SubscriptionManagerService {
             if (! (inflightEvent.getWebhookHttpStatus() >= 200 && inflightEvent.getWebhookHttpStatus() < 300)) {
                 LOGGER.warn("Negative ack (due to unsuccessful http status {} returned by the webhook) for message {}. Event is {}.",
                         inflightEvent.getWebhookHttpStatus(), message.getMessageId(), inflightEvent.toShortLog());
-                consumer.negativeAcknowledge(message);
+                negativeAcknowledgeWithBackoff(subscriber, message, deliveryPlan);
                 telemetryService.eventDeliveryFailed(inflightEvent, null, deliveryStart);
-                return; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+                return DeliveryDispatcher.DeliveryOutcome.FAILED; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
             }
 
             // If we reached this line, everything seems fine, so we can ack the message
             LOGGER.debug("Ack for message {}. Event is {}.", message.getMessageId(), inflightEvent.toShortLog());
-            try {
-                consumer.acknowledge(message);
-            } catch (PulsarClientException ex) {
-                LOGGER.error("Error while acknowledging Pulsar message", ex);
-            }
+            subscriber.acknowledge(message);
             telemetryService.eventDeliverySucceeded(inflightEvent, deliveryStart);
+            return DeliveryDispatcher.DeliveryOutcome.SUCCEEDED;
 
         } catch (Exception ex) {    // a global catch is mandatory because no exception should be raised/thrown by this operation !
-            LOGGER.error("Error while handling Pulsar message. Message id is {}. Event is {}", (message != null ?
+            handleUnexpectedDeliveryError(subscriber, message, inflightEvent != null ? inflightEvent : sentInflightEvent, ex, deliveryStart);
+            return DeliveryDispatcher.DeliveryOutcome.SKIPPED;
+        }
+    }
+
+    // The read timeouts and the 5xx/429 HTTP status codes are signs of an overloaded webhook host (so the concurrency
+    // limiter of the host backs off), unlike the other webhook errors (4xx, connection errors...)
+    private static boolean isWebhookHostCongested(InflightEvent inflightEvent) {
+        return inflightEvent.isWebhookReadTimeoutErrorOccurred() ||
+                inflightEvent.isWebhookServer5xxErrorOccurred() ||
+                inflightEvent.getWebhookHttpStatus() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private void handleUnexpectedDeliveryError(TransportSubscriber subscriber, ReceivedMessage message,
+                                               InflightEvent inflightEvent, Exception ex, Instant deliveryStart) {
+        try {
+            LOGGER.error("Error while handling message. Message id is {}. Event is {}", (message != null ?
                     message.getMessageId() : "null"), (inflightEvent != null ? inflightEvent.toShortLog() : "null"), ex);
             LOGGER.warn("Negative ack (due to exception) for message {}. Event is {}.", (message != null ?
                     message.getMessageId() : "null"), (inflightEvent != null ? inflightEvent.toShortLog() : "null"));
-            consumer.negativeAcknowledge(message);
+            negativeAcknowledgeWithBackoff(subscriber, message, null);
             if (inflightEvent != null) {
                 telemetryService.eventDeliveryFailed(inflightEvent, null, deliveryStart);
             }
+        } catch (Exception ex2) {   // should never happen...
+            LOGGER.error("Error while handling an error", ex2);
         }
     }
 
-    private boolean checkConditionsForEventDeliveryAreMetOrAbort(InflightEvent inflightEvent, Consumer<InflightEvent> consumer,
-                                                                 Message<InflightEvent> message, Instant deliveryStart) {
-        String subscriptionCode = inflightEvent.getSubscriptionCode();
+    // The conditions are checked on the event read by readEvent, so the payload is not decoded for the events which are
+    // not delivered, except for the ones recorded in the DLQ
+    private boolean checkConditionsForEventDeliveryAreMetOrAbort(InflightEvent inflightEvent, TransportSubscriber subscriber,
+                                                                 ReceivedMessage message, Instant deliveryStart, DeliveryPlan deliveryPlan) {
         boolean eventExpired = deliveryStart.isAfter(inflightEvent.getExpirationDate());
         if (eventExpired) {
             telemetryService.eventDeliveryAbortedDueToExpiredEvent(inflightEvent);
+            InflightEvent eventForDLQ = decodeEventIfNeeded(message, inflightEvent);   // before the ack (may throw)
             LOGGER.warn("Ack (due to expired event) for message {}. Event is {}.", message.getMessageId(), inflightEvent.toShortLog());
-            try {
-                consumer.acknowledge(message);
-            } catch (PulsarClientException ex) {
-                LOGGER.error("Error while acknowledging Pulsar message", ex);
-            }
-            recordEventInDLQ(inflightEvent);
+            subscriber.acknowledge(message);
+            recordEventInDLQ(eventForDLQ);
             return false; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
         }
 
-        Subscription subscription = catalog.getSubscription(subscriptionCode);
-        if (subscription == null) {
-            String msg = telemetryService.eventDeliveryAbortedDueToInvalidSubscriptionCode(inflightEvent);
-            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
-        }
-
-        if (! subscription.isActive()) {
+        // The subscription is known since its delivery plan has been built from the catalog
+        if (! deliveryPlan.subscriptionActive) {
             telemetryService.eventDeliveryAbortedDueToInactiveSubscription(inflightEvent);
+            InflightEvent eventForDLQ = decodeEventIfNeeded(message, inflightEvent);   // before the ack (may throw)
             LOGGER.warn("Ack (due to inactive subscription) for message {}. Event is {}.", message.getMessageId(), inflightEvent.toShortLog());
-            try {
-                consumer.acknowledge(message);
-            } catch (PulsarClientException ex) {
-                LOGGER.error("Error while acknowledging Pulsar message", ex);
-            }
-            recordEventInDLQ(inflightEvent);
+            subscriber.acknowledge(message);
+            recordEventInDLQ(eventForDLQ);
             return false; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
         }
 
-        String eventTypeCode = subscription.getEventTypeCode();
-        EventType eventType = catalog.getEventType(eventTypeCode);
-        if (eventType == null) {
+        if (! deliveryPlan.eventTypeFound) {
             String msg = telemetryService.eventDeliveryAbortedDueToInvalidEventTypeCode(inflightEvent);
             throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
         }
 
-        if (! eventType.isActive()) {
+        if (! deliveryPlan.eventTypeActive) {
             telemetryService.eventDeliveryAbortedDueToInactiveEventType(inflightEvent);
+            InflightEvent eventForDLQ = decodeEventIfNeeded(message, inflightEvent);   // before the ack (may throw)
             LOGGER.warn("Ack (due to inactive event type) for message {}. Event is {}.", message.getMessageId(), inflightEvent.toShortLog());
-            try {
-                consumer.acknowledge(message);
-            } catch (PulsarClientException ex) {
-                LOGGER.error("Error while acknowledging Pulsar message", ex);
-            }
-            recordEventInDLQ(inflightEvent);
+            subscriber.acknowledge(message);
+            recordEventInDLQ(eventForDLQ);
             return false; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
         }
 
-        boolean channelOk = subscription.getChannel() == null || subscription.getChannel().equalsIgnoreCase(inflightEvent.getChannel());
-        if (! channelOk) {
+        if (! deliveryPlan.matchesChannel(inflightEvent.getChannel())) {
             telemetryService.eventDeliveryAbortedDueToNotMatchingChannel(inflightEvent);
             LOGGER.warn("Ack (due to not matching channel) for message {}. Event is {}.", message.getMessageId(), inflightEvent.toShortLog());
-            try {
-                consumer.acknowledge(message);
-            } catch (PulsarClientException ex) {
-                LOGGER.error("Error while acknowledging Pulsar message", ex);
-            }
+            subscriber.acknowledge(message);
             // DO NOT recordEventInDLQ(inflightEvent) for an unmatched channel !
             return false; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
         }
@@ -291,41 +627,36 @@ public class SubscriptionManagerService {
         return true; // true means the caller should continue its code flow
     }
 
-    private void handleWebhookErrorOccurred(InflightEvent inflightEvent, Consumer<InflightEvent> consumer,
-                                               Message<InflightEvent> message, Instant deliveryStart, Subscription subscription) {
+    private void handleWebhookErrorOccurred(InflightEvent inflightEvent, TransportSubscriber subscriber,
+                                               ReceivedMessage message, Instant deliveryStart, DeliveryPlan deliveryPlan) {
         boolean eventExpiredDueToTimeToLiveForWebhookError = false;
         String eventExpirationReason = null;
 
         if (inflightEvent.isWebhookConnectionErrorOccurred()) {
             eventExpiredDueToTimeToLiveForWebhookError = isEventExpiredDueToTimeToLiveForWebhookError(inflightEvent, deliveryStart,
-                    config.getDefaultTimeToLiveInSecondsForWebhookConnectionError(),
-                    subscription.getTimeToLiveInSecondsForWebhookConnectionError());
+                    deliveryPlan.timeToLiveInSecondsForWebhookConnectionError);
             eventExpirationReason = "connection";
         }
         else if (inflightEvent.isWebhookReadTimeoutErrorOccurred()) {
             eventExpiredDueToTimeToLiveForWebhookError = isEventExpiredDueToTimeToLiveForWebhookError(inflightEvent, deliveryStart,
-                    config.getDefaultTimeToLiveInSecondsForWebhookReadTimeoutError(),
-                    subscription.getTimeToLiveInSecondsForWebhookReadTimeoutError());
+                    deliveryPlan.timeToLiveInSecondsForWebhookReadTimeoutError);
             eventExpirationReason = "read timeout";
         }
         else if (inflightEvent.isWebhookServer5xxErrorOccurred()) {
             eventExpiredDueToTimeToLiveForWebhookError = isEventExpiredDueToTimeToLiveForWebhookError(inflightEvent, deliveryStart,
-                    config.getDefaultTimeToLiveInSecondsForWebhookServer5xxError(),
-                    subscription.getTimeToLiveInSecondsForWebhookServer5xxError());
+                    deliveryPlan.timeToLiveInSecondsForWebhookServer5xxError);
             eventExpirationReason = "server 5xx";
         }
         else if (inflightEvent.isWebhookClient4xxErrorOccurred()) {
             if (inflightEvent.getWebhookHttpStatus() == HttpStatus.UNAUTHORIZED.value() ||
                     inflightEvent.getWebhookHttpStatus() == HttpStatus.FORBIDDEN.value()) {
                 eventExpiredDueToTimeToLiveForWebhookError = isEventExpiredDueToTimeToLiveForWebhookError(inflightEvent, deliveryStart,
-                        config.getDefaultTimeToLiveInSecondsForWebhookAuth401Or403Error(),
-                        subscription.getTimeToLiveInSecondsForWebhookAuth401Or403Error());
+                        deliveryPlan.timeToLiveInSecondsForWebhookAuth401Or403Error);
                 eventExpirationReason = "auth 401 or 403";
             }
             else {
                 eventExpiredDueToTimeToLiveForWebhookError = isEventExpiredDueToTimeToLiveForWebhookError(inflightEvent, deliveryStart,
-                        config.getDefaultTimeToLiveInSecondsForWebhookClient4xxError(),
-                        subscription.getTimeToLiveInSecondsForWebhookClient4xxError());
+                        deliveryPlan.timeToLiveInSecondsForWebhookClient4xxError);
                 eventExpirationReason = "client 4xx";
             }
         }
@@ -334,24 +665,157 @@ public class SubscriptionManagerService {
             LOGGER.warn("Event expired before delivery due to time to live expiration because of a webhook {} error. Event is {}.",
                     eventExpirationReason, inflightEvent.toShortLog());
             LOGGER.warn("Ack (due to expired event) for message {}. Event is {}.", message.getMessageId(), inflightEvent.toShortLog());
-            try {
-                consumer.acknowledge(message);
-            } catch (PulsarClientException ex) {
-                LOGGER.error("Error while acknowledging Pulsar message", ex);
-            }
+            subscriber.acknowledge(message);
             recordEventInDLQ(inflightEvent);
         }
         else {
             LOGGER.warn("Negative ack (due to webhook error) for message {}. Event is {}.",
                     message.getMessageId(), inflightEvent.toShortLog());
-            consumer.negativeAcknowledge(message);
+            negativeAcknowledgeWithBackoff(subscriber, message, deliveryPlan);
+        }
+    }
+
+    // The message is redelivered after an exponential backoff (doubled at each redelivery, up to the max backoff of the
+    // subscription) with jitter, so a webhook which is down is not called in a tight loop and the retries of the events
+    // which failed at the same time are spread over time.
+    // The delivery plan may be null (then the default max backoff is used).
+    private void negativeAcknowledgeWithBackoff(TransportSubscriber subscriber, ReceivedMessage message, DeliveryPlan deliveryPlan) {
+        long maxBackoffInMillis = deliveryPlan != null ?
+                deliveryPlan.maxRedeliveryBackoffInMillis : config.getDefaultMaxRedeliveryBackoffInMillis();
+        long backoffInMillis = computeRedeliveryBackoffInMillis(message.getRedeliveryCount(),
+                config.getInitialRedeliveryBackoffInMillis(), maxBackoffInMillis);
+        LOGGER.debug("Message {} will be redelivered in {} ms (redelivery count is {})", message.getMessageId(),
+                backoffInMillis, message.getRedeliveryCount());
+        subscriber.negativeAcknowledge(message, backoffInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // "Equal jitter": the backoff is between half and the whole of the exponential delay
+    static long computeRedeliveryBackoffInMillis(int redeliveryCount, long initialBackoffInMillis, long maxBackoffInMillis) {
+        long initial = Math.max(1, initialBackoffInMillis);
+        long max = Math.max(initial, maxBackoffInMillis);
+        int shift = Math.min(Math.max(0, redeliveryCount), Long.numberOfLeadingZeros(initial) - 1);  // no overflow
+        long exponentialBackoff = Math.min(max, initial << shift);
+        long halfBackoff = exponentialBackoff / 2;
+        return halfBackoff + ThreadLocalRandom.current().nextLong(exponentialBackoff - halfBackoff + 1);
+    }
+
+    private CompletableFuture<DeliveryResult> callSubscriptionAdapterAsync(InflightEvent inflightEvent) {
+        return callSubscriptionAdapterAsync("/webhooks", inflightEvent, DELIVERY_RESULT_TYPE,
+                String.format("Event is %s", inflightEvent.toShortLog()));
+    }
+
+    private CompletableFuture<List<DeliveryResult>> callSubscriptionAdapterWithBatchAsync(List<InflightEvent> inflightEvents) {
+        return callSubscriptionAdapterAsync("/webhooks/batch", inflightEvents, DELIVERY_RESULT_LIST_TYPE,
+                String.format("Batch is { size: %d, firstEvent: %s }", inflightEvents.size(), inflightEvents.get(0).toShortLog()));
+    }
+
+    // The returned future is completed exceptionally with a BrokerException if the call failed
+    private <T> CompletableFuture<T> callSubscriptionAdapterAsync(String path, Object body, ParameterizedTypeReference<T> responseType,
+                                                                  String bodyShortLog) {
+        if (! config.isAsynchronousDeliveryEnabled()) {
+            try {
+                return CompletableFuture.completedFuture(callSubscriptionAdapter(path, body, responseType, bodyShortLog));
+            } catch (Exception ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        String subscriptionAdapterUrl = config.getSubscriptionAdapterUrl() + path;
+        try {
+            HttpHeaders httpHeaders = createHttpHeadersForSubscriptionAdapter();
+
+            LOGGER.debug("Calling the Subscription Adapter at {}. {}.", subscriptionAdapterUrl, bodyShortLog);
+            return webClient.post()
+                    .uri(subscriptionAdapterUrl)
+                    .headers(headers -> headers.addAll(httpHeaders))
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToMono(responseType)
+                    .timeout(Duration.ofSeconds(config.getReadTimeoutInSecondsForSubscriptionAdapter()))
+                    .toFuture()
+                    .handle((response, throwable) -> {
+                        if (throwable != null) {
+                            throw toBrokerExceptionForSubscriptionAdapter(throwable, subscriptionAdapterUrl, bodyShortLog);
+                        }
+                        LOGGER.debug("The Subscription Adapter responded. {}.", bodyShortLog);
+                        return response;
+                    });
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(toBrokerExceptionForSubscriptionAdapter(ex, subscriptionAdapterUrl, bodyShortLog));
+        }
+    }
+
+    private BrokerException toBrokerExceptionForSubscriptionAdapter(Throwable throwable, String subscriptionAdapterUrl, String bodyShortLog) {
+        Throwable ex = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+        if (ex instanceof WebClientResponseException) {
+            WebClientResponseException responseException = (WebClientResponseException) ex;
+            HttpStatus httpStatus = HttpStatus.resolve(responseException.getRawStatusCode());
+            if (httpStatus == null) {
+                httpStatus = HttpStatus.BAD_GATEWAY;
+            }
+            String msg = String.format("%s error %s while calling the Subscription Adapter at %s. %s.",
+                    httpStatus.is4xxClientError() ? "Client" : "Server", responseException.getRawStatusCode(),
+                    subscriptionAdapterUrl, bodyShortLog);
+            if (httpStatus == HttpStatus.TOO_MANY_REQUESTS) {
+                LOGGER.warn(msg);   // the bulkhead of the webhook host is full, not an error
+            } else {
+                LOGGER.error(msg, ex);
+            }
+            return new BrokerException(httpStatus, msg, ex, subscriptionAdapterUrl);
+        }
+
+        if (hasCause(ex, ConnectException.class) || hasCauseWithMessage(ex, "Connection refused")) {
+            String msg = String.format("Connection Refused error while calling the Subscription Adapter at %s. %s.",
+                    subscriptionAdapterUrl, bodyShortLog);
+            LOGGER.error(msg, ex);
+            return new BrokerException(HttpStatus.BAD_GATEWAY, msg, ex, subscriptionAdapterUrl);
         }
+
+        if (hasCause(ex, TimeoutException.class)) {
+            String msg = String.format("Read Timeout error while calling the Subscription Adapter at %s. %s.",
+                    subscriptionAdapterUrl, bodyShortLog);
+            LOGGER.error(msg, ex);
+            return new BrokerException(HttpStatus.GATEWAY_TIMEOUT, msg, ex, subscriptionAdapterUrl);
+        }
+
+        String msg = String.format("Error while calling the Subscription Adapter at %s. %s.",
+                subscriptionAdapterUrl, bodyShortLog);
+        LOGGER.error(msg, ex);
+        return new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex, subscriptionAdapterUrl);
     }
 
-    // This operation can throw a BrokerException
-    private InflightEvent callSubscriptionAdapter(InflightEvent inflightEvent) {
-        String subscriptionAdapterUrl = config.getSubscriptionAdapterUrl() + "/webhooks";
+    private static boolean hasCause(Throwable throwable, Class<? extends Throwable> causeClass) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (causeClass.isInstance(t)) {
+                return true;
+            }
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
 
+    private static boolean hasCauseWithMessage(Throwable throwable, String message) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains(message)) {
+                return true;
+            }
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+
+    // The Subscription Adapter returns TOO_MANY_REQUESTS when the bulkhead of the webhook host is full
+    private static boolean isRejectedByWebhookBulkhead(Exception ex) {
+        return ex instanceof BrokerException && ((BrokerException) ex).getHttpStatus() == HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    private static Exception toException(Throwable throwable) {
+        Throwable t = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return t instanceof Exception ? (Exception) t : new RuntimeException(t);
+    }
+
+    private HttpHeaders createHttpHeadersForSubscriptionAdapter() {
         HttpHeaders httpHeaders = new HttpHeaders();
 
         httpHeaders.setContentType(MediaType.APPLICATION_JSON);
@@ -364,118 +828,173 @@ public class SubscriptionManagerService {
             LOGGER.warn("No Basic Auth credentials provided to access the Subscription Adapter");
         }
 
+        return httpHeaders;
+    }
+
+    // Blocking call, used if the asynchronous delivery is disabled. This operation can throw a BrokerException.
+    private <T> T callSubscriptionAdapter(String path, Object body, ParameterizedTypeReference<T> responseType, String bodyShortLog) {
+        String subscriptionAdapterUrl = config.getSubscriptionAdapterUrl() + path;
+
+        HttpHeaders httpHeaders = createHttpHeadersForSubscriptionAdapter();
+
         // charset UTF8 has been defined during the creation of RestTemplate
 
-        HttpEntity<InflightEvent> request = new HttpEntity<>(inflightEvent, httpHeaders);
+        HttpEntity<Object> request = new HttpEntity<>(body, httpHeaders);
 
         try {
 
-            LOGGER.debug("Calling the Subscription Adapter at {}. Event is {}.",
-                    subscriptionAdapterUrl, inflightEvent.cloneWithoutSensitiveData());
-            ResponseEntity<InflightEvent> response = restTemplate.exchange(
-                    subscriptionAdapterUrl, HttpMethod.POST, request, InflightEvent.class);
-            LOGGER.debug("The Subscription Adapter returned the http status code {}. Event is {}.",
-                    response.getStatusCode(), inflightEvent.toShortLog());
+            LOGGER.debug("Calling the Subscription Adapter at {}. {}.", subscriptionAdapterUrl, bodyShortLog);
+            ResponseEntity<T> response = restTemplate.exchange(
+                    subscriptionAdapterUrl, HttpMethod.POST, request, responseType);
+            LOGGER.debug("The Subscription Adapter returned the http status code {}. {}.",
+                    response.getStatusCode(), bodyShortLog);
 
-            InflightEvent returnedInflightEvent = response.getBody();
-            LOGGER.debug("Returning the event {}", returnedInflightEvent != null ? returnedInflightEvent.cloneWithoutSensitiveData() : null);
-            return returnedInflightEvent;
+            return response.getBody();
 
         } catch (HttpClientErrorException ex) {
-            String msg = String.format("Client error %s while calling the Subscription Adapter at %s. Event is %s.",
-                    ex.getStatusCode(), subscriptionAdapterUrl, inflightEvent.toShortLog());
-            LOGGER.error(msg, ex);
+            String msg = String.format("Client error %s while calling the Subscription Adapter at %s. %s.",
+                    ex.getStatusCode(), subscriptionAdapterUrl, bodyShortLog);
+            if (ex.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                LOGGER.warn(msg);   // the bulkhead of the webhook host is full, not an error
+            } else {
+                LOGGER.error(msg, ex);
+            }
             throw new BrokerException(ex.getStatusCode(), msg, ex, subscriptionAdapterUrl);
 
         } catch (HttpServerErrorException ex) {
-            String msg = String.format("Server error %s while calling the Subscription Adapter at %s. Event is %s.",
-                    ex.getStatusCode(), subscriptionAdapterUrl, inflightEvent.toShortLog());
+            String msg = String.format("Server error %s while calling the Subscription Adapter at %s. %s.",
+                    ex.getStatusCode(), subscriptionAdapterUrl, bodyShortLog);
             LOGGER.error(msg, ex);
             throw new BrokerException(ex.getStatusCode(), msg, ex, subscriptionAdapterUrl);
 
         } catch (Exception ex) {
             if (ex.getMessage().contains("Connection refused")) {
-                String msg = String.format("Connection Refused error while calling the Subscription Adapter at %s. Event is %s.",
-                        subscriptionAdapterUrl, inflightEvent.toShortLog());
+                String msg = String.format("Connection Refused error while calling the Subscription Adapter at %s. %s.",
+                        subscriptionAdapterUrl, bodyShortLog);
                 LOGGER.error(msg, ex);
                 throw new BrokerException(HttpStatus.BAD_GATEWAY, msg, ex, subscriptionAdapterUrl);
             }
 
             else if (ex.getMessage().contains("Read timed out")) {
-                String msg = String.format("Read Timeout error while calling the Subscription Adapter at %s. Event is %s.",
-                        subscriptionAdapterUrl, inflightEvent.toShortLog());
+                String msg = String.format("Read Timeout error while calling the Subscription Adapter at %s. %s.",
+                        subscriptionAdapterUrl, bodyShortLog);
                 LOGGER.error(msg, ex);
                 throw new BrokerException(HttpStatus.GATEWAY_TIMEOUT, msg, ex, subscriptionAdapterUrl);
             }
 
             else {
-                String msg = String.format("Error while calling the Subscription Adapter at %s. Event is %s.",
-                        subscriptionAdapterUrl, inflightEvent.toShortLog());
+                String msg = String.format("Error while calling the Subscription Adapter at %s. %s.",
+                        subscriptionAdapterUrl, bodyShortLog);
                 LOGGER.error(msg, ex);
                 throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex, subscriptionAdapterUrl);
             }
         }
     }
 
+    // Non-blocking: the event is published in the DLQ asynchronously, so a delivery worker or a listener thread does not
+    // wait for the messaging transport. A failure is only logged (like before, the message has already been acked).
     private void recordEventInDLQ(InflightEvent event) {
         if (event == null) return;
+        InflightEvent eventForDLQ = event.cloneWithoutSensitiveData();
         try {
-            event = event.cloneWithoutSensitiveData();
             LOGGER.warn("Recording event in the DLQ for eventTypeCode {} and subscriptionCode {}. Event is {}.",
-                    event.getEventTypeCode(), event.getSubscriptionCode(), event.toShortLog());
-            Producer<InflightEvent> producer = getPulsarProducerForDLQ(event.getEventTypeCode(), event.getSubscriptionCode());
-            producer.send(event);
+                    eventForDLQ.getEventTypeCode(), eventForDLQ.getSubscriptionCode(), eventForDLQ.toShortLog());
+            byte[] data = codecForDLQ.encode(eventForDLQ);
+            getPublisherForDLQAsync(eventForDLQ.getEventTypeCode(), eventForDLQ.getSubscriptionCode())
+                    .thenCompose(publisher -> publisher.publishAsync(new OutgoingMessage(data)
+                            .withProperty(InflightEventCodec.ENCODING_PROPERTY, codecForDLQ.getName())))
+                    .whenComplete((x, throwable) -> {
+                        if (throwable != null) {
+                            logErrorWhileRecordingEventInDLQ(eventForDLQ, throwable);
+                        }
+                    });
         } catch (Exception ex) {
-            LOGGER.error("Error while recording an event in the DLQ for eventTypeCode {} and subscriptionCode {}. Event is {}.",
-                    event.getEventTypeCode(), event.getSubscriptionCode(), event.toShortLog(), ex);
+            logErrorWhileRecordingEventInDLQ(eventForDLQ, ex);
         }
     }
 
-    private synchronized Producer<InflightEvent> getPulsarProducerForDLQ(String eventTypeCode, String subscriptionCode) {
-        Producer<InflightEvent> producer = eventTypeCodeToPulsarProducerForDLQMap.computeIfAbsent(eventTypeCode, x -> {
-            try {
-                LOGGER.info("Creating Pulsar producer for DLQ for eventTypeCode {} and subscriptionCode {}",
-                        eventTypeCode, subscriptionCode);
-                //Schema<InflightEvent> schema = Schema.JSON(InflightEvent.class);
-                Schema<InflightEvent> schema = DefaultImplementation.newJSONSchema(SchemaDefinition.builder().withJSR310ConversionEnabled(true).withPojo(InflightEvent.class).build());
-                Producer<InflightEvent> p =  pulsar.newProducer(schema)
-                        .topic(eventTypeCode + "_" + subscriptionCode + "_AppDLQ")
-                        .create();
-                if (p != null) {
-                    LOGGER.info("Pulsar producer for DLQ created for eventTypeCode {} and subscriptionCode {}",
-                            eventTypeCode, subscriptionCode);
-                }
-                return p;
-            } catch (Exception ex) {
-                String msg = String.format("Error while creating a Pulsar producer for DLQ for eventTypeCode %s and subscriptionCode %s",
-                        eventTypeCode, subscriptionCode);
-                LOGGER.error(msg, ex);
-                return null;
-            }
+    private void logErrorWhileRecordingEventInDLQ(InflightEvent event, Throwable throwable) {
+        LOGGER.error("Error while recording an event in the DLQ for eventTypeCode {} and subscriptionCode {}. Event is {}.",
+                event.getEventTypeCode(), event.getSubscriptionCode(), event.toShortLog(), throwable);
+    }
+
+    // The registry is keyed by the DLQ topic name since there is one DLQ per event type AND subscription
+    private CompletableFuture<TransportPublisher> getPublisherForDLQAsync(String eventTypeCode, String subscriptionCode) {
+        String topicName = eventTypeCode + "_" + subscriptionCode + "_AppDLQ";
+        return topicNameToPublisherForDLQRegistry.getAsync(topicName,
+                x -> createPublisherForDLQAsync(eventTypeCode, subscriptionCode, topicName));
+    }
+
+    private CompletableFuture<TransportPublisher> createPublisherForDLQAsync(String eventTypeCode, String subscriptionCode, String topicName) {
+        LOGGER.info("Creating {} publisher for DLQ for eventTypeCode {} and subscriptionCode {}",
+                transport.getName(), eventTypeCode, subscriptionCode);
+        return transport.createPublisherAsync(topicName, PublisherSettings.DEFAULT)
+                .whenComplete((publisher, throwable) -> {
+                    if (throwable != null) {
+                        String msg = String.format("Error while creating a %s publisher for DLQ for eventTypeCode %s and subscriptionCode %s",
+                                transport.getName(), eventTypeCode, subscriptionCode);
+                        LOGGER.error(msg, throwable);
+                    } else {
+                        LOGGER.info("{} publisher for DLQ created for eventTypeCode {} and subscriptionCode {}",
+                                transport.getName(), eventTypeCode, subscriptionCode);
+                    }
+                });
+    }
+
+    // The time to live is the effective one (see DeliveryPlan)
+    private boolean isEventExpiredDueToTimeToLiveForWebhookError(InflightEvent event, Instant now, long timeToLiveInSecondsForWebhookError) {
+        return now.isAfter(event.getCreationDate().plusSeconds(timeToLiveInSecondsForWebhookError));
+    }
+
+    // The webhook URL of a subscription is read when its subscriber is created (like its other delivery settings)
+    private AdaptiveConcurrencyLimiter getConcurrencyLimiter(Subscription subscription) {
+        String webhookHost = getWebhookHost(subscription);
+        if (! config.isAdaptiveConcurrencyEnabled()) {
+            return AdaptiveConcurrencyLimiter.unlimited(webhookHost);
+        }
+        return webhookHostToConcurrencyLimiter.computeIfAbsent(webhookHost, x -> {
+            LOGGER.info("Creating the concurrency limiter of webhook host {}", webhookHost);
+            return new AdaptiveConcurrencyLimiter(webhookHost, config.getAdaptiveConcurrencyInitialLimitPerWebhookHost(),
+                    config.getAdaptiveConcurrencyMaxLimitPerWebhookHost(), config.getAdaptiveConcurrencyBackoffRatio(),
+                    config.getAdaptiveConcurrencyRttTolerance(), telemetryService);
         });
-        if (producer == null) {
-            // No Need to log the error since it has already been logged in eventTypeCodeToPulsarProducerForDLQMap.computeIfAbsent
-            String msg = String.format("Error while creating a Pulsar producer for DLQ for eventTypeCode %s ans subscriptionCode %s", eventTypeCode, subscriptionCode);
-            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+    }
+
+    // host:port of the webhook URL (or the subscription code if the URL is invalid, so the subscription gets its own limiter)
+    private static String getWebhookHost(Subscription subscription) {
+        try {
+            String authority = URI.create(subscription.getWebhookUrl().trim()).getAuthority();
+            if (authority != null) {
+                return authority.substring(authority.lastIndexOf('@') + 1).toLowerCase();   // without user info
+            }
+        } catch (Exception ex) {
+            LOGGER.warn("Invalid webhook URL {} for subscriptionCode {}", subscription.getWebhookUrl(), subscription.getCode());
         }
-        return producer;
+        return subscription.getCode();
     }
 
-    private boolean isEventExpiredDueToTimeToLiveForWebhookError(InflightEvent event, Instant now, long defaultTimeToLiveForWebhookError, Long timeToLiveForWebhookErrorInSubscription) {
-        long timeToLiveInSecondsToUse = defaultTimeToLiveForWebhookError;
-        if (timeToLiveForWebhookErrorInSubscription != null && timeToLiveForWebhookErrorInSubscription > 0) {
-            timeToLiveInSecondsToUse = timeToLiveForWebhookErrorInSubscription;
+    private DeliveryDispatcher.BatchSettings getDeliveryBatchSettings(Subscription subscription) {
+        if (subscription.getDeliveryBatchMaxSize() == null || subscription.getDeliveryBatchMaxSize() <= 1) {
+            return DeliveryDispatcher.BatchSettings.NONE;
         }
-        return now.isAfter(event.getCreationDate().plusSeconds(timeToLiveInSecondsToUse));
+        return new DeliveryDispatcher.BatchSettings(subscription.getDeliveryBatchMaxSize(),
+                subscription.getDeliveryBatchMaxBytes() != null ? subscription.getDeliveryBatchMaxBytes() : 0,
+                subscription.getDeliveryBatchMaxLingerInMillis() != null ?
+                        subscription.getDeliveryBatchMaxLingerInMillis() : config.getDefaultDeliveryBatchMaxLingerInMillis());
     }
 
-    private boolean shouldTheEventBeManagedByThisInstanceOfSubscriptionManager(String eventTypeCode) {
-        int sumOfAsciiCodesOfCharsOfEventTypeCode = 0;
-        int eventTypeCodeLength = eventTypeCode.length();
-        for (int i = 0; i < eventTypeCodeLength; i++) {
-            sumOfAsciiCodesOfCharsOfEventTypeCode += eventTypeCode.charAt(i);
+    // A "shared" or "key_shared" subscription is consumed by all the instances of the Subscription Manager
+    private SubscriptionType getSubscriptionType(Subscription subscription) {
+        String consumerSubscriptionType = subscription.getConsumerSubscriptionType();
+        if (consumerSubscriptionType == null || consumerSubscriptionType.trim().isEmpty()) {
+            return SubscriptionType.FAILOVER;
+        }
+        try {
+            return SubscriptionType.valueOf(consumerSubscriptionType.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn("Invalid consumer subscription type {} for subscriptionCode {}. Failover is used.",
+                    consumerSubscriptionType, subscription.getCode());
+            return SubscriptionType.FAILOVER;
         }
-        int indexOfTheInstanceOfTheInstanceOfSubscriptionManagerThatShouldManageThisEvent = sumOfAsciiCodesOfCharsOfEventTypeCode % config.getClusterSize();
-        return indexOfTheInstanceOfTheInstanceOfSubscriptionManagerThatShouldManageThisEvent == config.getClusterIndex();
     }
 }
@@ -4,6 +4,7 @@ import fr.volkaert.event_broker.error.BrokerException;
 import fr.volkaert.event_broker.error.BrokerExceptionResponse;
 import fr.volkaert.event_broker.standard_publication_adapter.model.EventFromPublisher;
 import fr.volkaert.event_broker.standard_publication_adapter.model.EventToPublisher;
+import fr.volkaert.event_broker.standard_publication_adapter.model.PublicationResultToPublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,9 +12,12 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/events")
 public class PublicationAdapterController {
@@ -27,9 +31,10 @@ public class PublicationAdapterController {
     private static final Logger LOGGER = LoggerFactory.getLogger(PublicationAdapterController.class);
 
     @PostMapping
-    public ResponseEntity<Object> publish(@RequestBody EventFromPublisher eventFromPublisher) {
+    public ResponseEntity<Object> publish(@RequestBody EventFromPublisher eventFromPublisher,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            EventToPublisher eventToPublisher = publicationAdapterService.publish(eventFromPublisher);
+            EventToPublisher eventToPublisher = publicationAdapterService.publish(eventFromPublisher, idempotencyKey);
             return new ResponseEntity<Object>(eventToPublisher, HttpStatus.CREATED);
         } catch (BrokerException ex) {
             // If error is a BrokerException, the error should already have been logged
@@ -40,4 +45,21 @@ public class PublicationAdapterController {
             return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+    // Returns 200 OK with one result (event or error) per published event, in the same order as the request
+    @PostMapping("/batch")
+    public ResponseEntity<Object> publishBatch(@RequestBody List<EventFromPublisher> eventsFromPublisher,
+                                               @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        try {
+            List<PublicationResultToPublisher> results = publicationAdapterService.publishBatch(eventsFromPublisher, idempotencyKey);
+            return new ResponseEntity<Object>(results, HttpStatus.OK);
+        } catch (BrokerException ex) {
+            // If error is a BrokerException, the error should already have been logged
+            //LOGGER.error(ex.getMessage(), ex);
+            return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), ex.getHttpStatus());
+        } catch (Exception ex) {
+            LOGGER.error(ex.getMessage(), ex);
+            return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 }
@@ -2,12 +2,15 @@ package fr.volkaert.event_broker.standard_publication_adapter;
 
 import fr.volkaert.event_broker.error.BrokerException;
 import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.model.PublicationResult;
 import fr.volkaert.event_broker.standard_publication_adapter.model.EventFromPublisher;
 import fr.volkaert.event_broker.standard_publication_adapter.model.EventToPublisher;
+import fr.volkaert.event_broker.standard_publication_adapter.model.PublicationResultToPublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -15,6 +18,9 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 @Service
 public class PublicationAdapterService {
 
@@ -27,21 +33,15 @@ public class PublicationAdapterService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PublicationAdapterService.class);
 
-    public EventToPublisher publish(EventFromPublisher eventFromPublisher) {
+    // The idempotencyKey (may be null) is forwarded as is to the Publication Manager
+    public EventToPublisher publish(EventFromPublisher eventFromPublisher, String idempotencyKey) {
         LOGGER.debug("Event received. Event is {}.", eventFromPublisher);
 
         String publicationManagerUrl = config.getPublicationManagerUrl() + "/events";
 
-        HttpHeaders httpHeaders = new HttpHeaders();
-
-        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
-
-        if (!StringUtils.isEmpty(config.getAuthClientIdForPublicationManager()) && !StringUtils.isEmpty(config.getAuthClientSecretForPublicationManager())) {
-            httpHeaders.setBasicAuth(
-                    config.getAuthClientIdForPublicationManager(),
-                    config.getAuthClientSecretForPublicationManager());
-        } else {
-            LOGGER.warn("No Basic Auth credentials provided to access the Publication Manager");
+        HttpHeaders httpHeaders = createHttpHeadersForPublicationManager();
+        if (!StringUtils.isEmpty(idempotencyKey)) {
+            httpHeaders.set("Idempotency-Key", idempotencyKey);
         }
 
         // charset UTF8 has been defined during the creation of RestTemplate
@@ -61,39 +61,110 @@ public class PublicationAdapterService {
             LOGGER.debug("Returning the event {}", eventToPublisher);
             return eventToPublisher;
 
-        } catch (HttpClientErrorException ex) {
-            String msg = String.format("Client error %s while calling the Publication Manager at %s. Event is %s.",
-                    ex.getStatusCode(), publicationManagerUrl, inflightEvent.toShortLog());
+        } catch (Exception ex) {
+            throw toBrokerException(ex, publicationManagerUrl, "Event is " + inflightEvent.toShortLog());
+        }
+    }
+
+    // The idempotencyKey of the batch (may be null) is forwarded as is to the Publication Manager, as well as the
+    // idempotencyKey of each event
+    public List<PublicationResultToPublisher> publishBatch(List<EventFromPublisher> eventsFromPublisher, String idempotencyKey) {
+        if (eventsFromPublisher == null || eventsFromPublisher.isEmpty()) {
+            throw new BrokerException(HttpStatus.BAD_REQUEST, "The batch of events is empty");
+        }
+        LOGGER.debug("Batch of {} events received.", eventsFromPublisher.size());
+
+        String publicationManagerUrl = config.getPublicationManagerUrl() + "/events/batch";
+
+        HttpHeaders httpHeaders = createHttpHeadersForPublicationManager();
+        if (!StringUtils.isEmpty(idempotencyKey)) {
+            httpHeaders.set("Idempotency-Key", idempotencyKey);
+        }
+
+        // charset UTF8 has been defined during the creation of RestTemplate
+
+        List<InflightEvent> inflightEvents = eventsFromPublisher.stream()
+                .map(EventFromPublisher::toInflightEvent)
+                .collect(Collectors.toList());
+        HttpEntity<List<InflightEvent>> request = new HttpEntity<>(inflightEvents, httpHeaders);
+
+        try {
+            LOGGER.debug("Calling the Publication Manager at {}. Batch size is {}.", publicationManagerUrl, inflightEvents.size());
+            ResponseEntity<List<PublicationResult>> response = restTemplateForPublicationManager.exchange(
+                    publicationManagerUrl, HttpMethod.POST, request, new ParameterizedTypeReference<List<PublicationResult>>() {});
+            LOGGER.debug("The Publication Manager returned the http status code {}. Batch size is {}.",
+                    response.getStatusCode(), inflightEvents.size());
+
+            List<PublicationResult> publicationResults = response.getBody();
+            if (publicationResults == null || publicationResults.size() != inflightEvents.size()) {
+                String msg = String.format("The Publication Manager at %s returned %s results for a batch of %d events.",
+                        publicationManagerUrl, publicationResults != null ? publicationResults.size() : "no", inflightEvents.size());
+                LOGGER.error(msg);
+                throw new BrokerException(HttpStatus.BAD_GATEWAY, msg, publicationManagerUrl);
+            }
+            return publicationResults.stream()
+                    .map(PublicationResultToPublisher::from)
+                    .collect(Collectors.toList());
+
+        } catch (BrokerException ex) {
+            throw ex;   // already logged
+        } catch (Exception ex) {
+            throw toBrokerException(ex, publicationManagerUrl, "Batch size is " + inflightEvents.size());
+        }
+    }
+
+    private HttpHeaders createHttpHeadersForPublicationManager() {
+        HttpHeaders httpHeaders = new HttpHeaders();
+
+        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+
+        if (!StringUtils.isEmpty(config.getAuthClientIdForPublicationManager()) && !StringUtils.isEmpty(config.getAuthClientSecretForPublicationManager())) {
+            httpHeaders.setBasicAuth(
+                    config.getAuthClientIdForPublicationManager(),
+                    config.getAuthClientSecretForPublicationManager());
+        } else {
+            LOGGER.warn("No Basic Auth credentials provided to access the Publication Manager");
+        }
+        return httpHeaders;
+    }
+
+    // The returned exception has already been logged
+    private BrokerException toBrokerException(Exception ex, String publicationManagerUrl, String context) {
+        if (ex instanceof HttpClientErrorException) {
+            HttpClientErrorException httpEx = (HttpClientErrorException) ex;
+            String msg = String.format("Client error %s while calling the Publication Manager at %s. %s.",
+                    httpEx.getStatusCode(), publicationManagerUrl, context);
             LOGGER.error(msg, ex);
-            throw new BrokerException(ex.getStatusCode(), msg, ex, publicationManagerUrl);
+            return new BrokerException(httpEx.getStatusCode(), msg, ex, publicationManagerUrl);
+        }
 
-        } catch (HttpServerErrorException ex) {
-            String msg = String.format("Server error %s while calling the Publication Manager at %s. Event is %s.",
-                    ex.getStatusCode(), publicationManagerUrl, inflightEvent.toShortLog());
+        else if (ex instanceof HttpServerErrorException) {
+            HttpServerErrorException httpEx = (HttpServerErrorException) ex;
+            String msg = String.format("Server error %s while calling the Publication Manager at %s. %s.",
+                    httpEx.getStatusCode(), publicationManagerUrl, context);
             LOGGER.error(msg, ex);
-            throw new BrokerException(ex.getStatusCode(), msg, ex, publicationManagerUrl);
+            return new BrokerException(httpEx.getStatusCode(), msg, ex, publicationManagerUrl);
+        }
 
-        } catch (Exception ex) {
-            if (ex.getMessage().contains("Connection refused")) {
-                String msg = String.format("Connection Refused error while calling the Publication Manager at %s. Event is %s.",
-                        publicationManagerUrl, inflightEvent.toShortLog());
-                LOGGER.error(msg, ex);
-                throw new BrokerException(HttpStatus.BAD_GATEWAY, msg, ex, publicationManagerUrl);
-            }
+        else if (ex.getMessage() != null && ex.getMessage().contains("Connection refused")) {
+            String msg = String.format("Connection Refused error while calling the Publication Manager at %s. %s.",
+                    publicationManagerUrl, context);
+            LOGGER.error(msg, ex);
+            return new BrokerException(HttpStatus.BAD_GATEWAY, msg, ex, publicationManagerUrl);
+        }
 
-            else if (ex.getMessage().contains("Read timed out")) {
-                String msg = String.format("Read Timeout error while calling the Publication Manager at %s. Event is %s.",
-                        inflightEvent.getWebhookUrl(), inflightEvent.toShortLog());
-                LOGGER.error(msg, ex);
-                throw new BrokerException(HttpStatus.GATEWAY_TIMEOUT, msg, ex, publicationManagerUrl);
-            }
+        else if (ex.getMessage() != null && ex.getMessage().contains("Read timed out")) {
+            String msg = String.format("Read Timeout error while calling the Publication Manager at %s. %s.",
+                    publicationManagerUrl, context);
+            LOGGER.error(msg, ex);
+            return new BrokerException(HttpStatus.GATEWAY_TIMEOUT, msg, ex, publicationManagerUrl);
+        }
 
-            else {
-                String msg = String.format("Error while calling Publication Manager at %s. Event is %s.",
-                        publicationManagerUrl, inflightEvent.toShortLog());
-                LOGGER.error(msg, ex);
-                throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex, publicationManagerUrl);
-            }
+        else {
+            String msg = String.format("Error while calling Publication Manager at %s. %s.",
+                    publicationManagerUrl, context);
+            LOGGER.error(msg, ex);
+            return new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex, publicationManagerUrl);
         }
     }
 }
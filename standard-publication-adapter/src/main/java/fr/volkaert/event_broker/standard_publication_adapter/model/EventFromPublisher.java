@@ -1,6 +1,8 @@
 package fr.volkaert.event_broker.standard_publication_adapter.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import fr.volkaert.event_broker.model.InflightEvent;
+import fr.volkaert.event_broker.util.RawJsonPayloadDeserializer;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -10,9 +12,11 @@ public class EventFromPublisher {
 
     private String businessId;
     private String publicationCode;
+    @JsonDeserialize(using = RawJsonPayloadDeserializer.class)  // the payload is kept as raw JSON (see RawJsonPayload)
     private Object payload;
     private Long timeToLiveInSeconds;
     private String channel;
+    private String idempotencyKey;  // optional, mainly for the events of a batch (see the Idempotency-Key header otherwise)
 
     public InflightEvent toInflightEvent() {
         InflightEvent inflightEvent = new InflightEvent();
@@ -21,6 +25,7 @@ public class EventFromPublisher {
         inflightEvent.setPayload(payload);
         inflightEvent.setTimeToLiveInSeconds(timeToLiveInSeconds);
         inflightEvent.setChannel(channel);
+        inflightEvent.setIdempotencyKey(idempotencyKey);
         return inflightEvent;
     }
 }
\ No newline at end of file
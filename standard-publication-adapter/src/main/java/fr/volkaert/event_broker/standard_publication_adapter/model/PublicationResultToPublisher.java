@@ -0,0 +1,24 @@
+package fr.volkaert.event_broker.standard_publication_adapter.model;
+
+import fr.volkaert.event_broker.model.PublicationResult;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class PublicationResultToPublisher {
+
+    private EventToPublisher event; // null if the publication failed
+    private int status;             // HTTP status code for this event (201 if the event was published)
+    private String error;           // error message if the publication failed
+
+    public static PublicationResultToPublisher from(PublicationResult publicationResult) {
+        if (publicationResult == null) return null;
+
+        PublicationResultToPublisher resultToPublisher = new PublicationResultToPublisher();
+        resultToPublisher.setEvent(EventToPublisher.from(publicationResult.getEvent()));
+        resultToPublisher.setStatus(publicationResult.getStatus());
+        resultToPublisher.setError(publicationResult.getError());
+        return resultToPublisher;
+    }
+}
@@ -14,11 +14,24 @@ public class BrokerConfig {
 
     private long connectTimeoutInSecondsForWebhooks;
     private long readTimeoutInSecondsForWebhooks;
+    private long connectionRequestTimeoutInSecondsForWebhooks = 5; // max wait for a connection of the pool
+    private int maxConnectionsPerHostForWebhooks = 50;
+    private int maxConnectionsForWebhooks = 500;
+    private long idleTimeoutInSecondsForWebhooks = 30;  // the connections idle for longer are closed
+    private long maxKeepAliveInSecondsForWebhooks = 60; // used if the webhook does not return a shorter Keep-Alive timeout
+
+    private int bulkheadMaxConcurrentCallsPerWebhookHost = 50;  // <= 0 means no bulkhead
+    private int bulkheadMaxWaitingCallsPerWebhookHost = 0;  // 0 means the calls over the limit are rejected right away
+    private long bulkheadMaxWaitInMillis = 100;
 
     private String oauth2TokenEndpoint;
     private String oauth2ClientId;
     private String oauth2ClientSecret;
     private long connectTimeoutInSecondsForOAuth2Issuer;
     private long readTimeoutInSecondsForOAuth2Issuer;
+    private double oauth2TokenRefreshAheadRatio = 0.8;  // part of the token lifetime after which the token is refreshed
+    private long oauth2TokenRefreshCheckIntervalInMillis = 5000;
+    private int oauth2TokenCacheMaxSize = 1000;     // max number of cached scopes
+    private long oauth2TokenCacheIdleTimeoutInSeconds = 3600;   // the scopes unused for longer are evicted
 
 }
\ No newline at end of file
@@ -0,0 +1,230 @@
+package fr.volkaert.event_broker.standard_subscription_adapter;
+
+import fr.volkaert.event_broker.error.BrokerException;
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.*;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Cache of the OAuth2 access tokens used to call the webhooks secured with OAuth2, one token per scope:
+// - a cached token is read without lock
+// - a single call to the OAuth2 issuer is made at a time for a scope (the other callers wait for its result), and the
+//   calls for the other scopes are not blocked
+// - the tokens are refreshed ahead of their expiration by a scheduled task (once oauth2TokenRefreshAheadRatio of their
+//   lifetime has elapsed), so the deliveries do not wait for the OAuth2 issuer. If a refresh fails, the current token is
+//   used until its expiration and the refresh is retried by the next run of the task.
+// - the scopes which have not been used for oauth2TokenCacheIdleTimeoutInSeconds are evicted (and no more refreshed),
+//   and at most oauth2TokenCacheMaxSize scopes are cached (the least recently used scope is evicted first)
+@Component
+@EnableScheduling
+public class OAuth2TokenCache {
+
+    @Autowired
+    @Qualifier("RestTemplateForOAuth2Issuer")
+    RestTemplate restTemplateForOAuth2Issuer;
+
+    @Autowired
+    BrokerConfig config;
+
+    @Autowired
+    TelemetryService telemetryService;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OAuth2TokenCache.class);
+
+    private static final long EXPIRATION_SAFETY_MARGIN_IN_MILLIS = 10000;   // a token is not used in its last 10 seconds
+
+    private final Map<String, CachedScope> scopeToCachedScope = new ConcurrentHashMap<>();
+
+    private AtomicLong hitsCounter;
+    private AtomicLong missesCounter;
+    private AtomicLong sizeGauge;
+
+    @PostConstruct
+    public void init() {
+        hitsCounter = telemetryService.oauth2TokenCacheHitsCounter();
+        missesCounter = telemetryService.oauth2TokenCacheMissesCounter();
+        sizeGauge = telemetryService.oauth2TokenCacheSizeGauge();
+    }
+
+    // Lock-free if a valid token is cached for this scope. This operation can throw an exception.
+    public String getAccessToken(String authScope) {
+        long now = System.currentTimeMillis();
+        CachedScope cachedScope = scopeToCachedScope.get(authScope);
+        if (cachedScope != null) {
+            cachedScope.lastAccessTime = now;
+            CachedToken token = cachedScope.token;
+            if (token != null && token.isValidAt(now)) {
+                hitsCounter.incrementAndGet();
+                return token.accessToken;
+            }
+        } else {
+            cachedScope = scopeToCachedScope.computeIfAbsent(authScope, x -> new CachedScope(authScope, now));
+            evictLeastRecentlyUsedScopesIfFull();
+        }
+        missesCounter.incrementAndGet();
+        return fetchToken(cachedScope, "on_demand").accessToken;
+    }
+
+    @Scheduled(fixedDelayString = "${broker.oauth2-token-refresh-check-interval-in-millis:5000}")
+    public void refreshTokensAhead() {
+        long now = System.currentTimeMillis();
+        long idleTimeoutInMillis = TimeUnit.SECONDS.toMillis(config.getOauth2TokenCacheIdleTimeoutInSeconds());
+        for (CachedScope cachedScope : scopeToCachedScope.values()) {
+            if (now - cachedScope.lastAccessTime > idleTimeoutInMillis) {
+                LOGGER.debug("OAuth2 token for scope {} evicted from the cache since it has not been used for {} seconds",
+                        cachedScope.scope, config.getOauth2TokenCacheIdleTimeoutInSeconds());
+                scopeToCachedScope.remove(cachedScope.scope, cachedScope);
+                continue;
+            }
+            CachedToken token = cachedScope.token;
+            if (token != null && now >= token.refreshTime) {
+                try {
+                    fetchToken(cachedScope, "refresh_ahead");
+                } catch (Exception ex) {
+                    // Already logged. The current token is used until its expiration.
+                }
+            }
+        }
+        sizeGauge.set(scopeToCachedScope.size());
+    }
+
+    // Single-flight: if a call to the OAuth2 issuer is already in progress for this scope, its result is awaited
+    private CachedToken fetchToken(CachedScope cachedScope, String trigger) {
+        CompletableFuture<CachedToken> fetch = new CompletableFuture<>();
+        CompletableFuture<CachedToken> fetchInProgress = cachedScope.fetchInProgress.compareAndExchange(null, fetch);
+        if (fetchInProgress != null) {
+            return fetchInProgress.join();
+        }
+        try {
+            // The token may have been fetched by another caller since it was checked (its fetch has just completed)
+            long now = System.currentTimeMillis();
+            CachedToken cachedToken = cachedScope.token;
+            if (cachedToken != null && ("refresh_ahead".equals(trigger) ? now < cachedToken.refreshTime : cachedToken.isValidAt(now))) {
+                fetch.complete(cachedToken);
+                return cachedToken; // *** PAY ATTENTION, THERE IS A RETURN HERE !!! ***
+            }
+            CachedToken token = callOAuth2Issuer(cachedScope.scope, trigger);
+            cachedScope.token = token;
+            fetch.complete(token);
+            return token;
+        } catch (RuntimeException ex) {
+            fetch.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            cachedScope.fetchInProgress.set(null);
+        }
+    }
+
+    private CachedToken callOAuth2Issuer(String authScope, String trigger) {
+        long fetchStart = System.nanoTime();
+        try {
+            LOGGER.debug("Calling the OAuth2 issuer at {} to get token for scope {}", config.getOauth2TokenEndpoint(), authScope);
+
+            HttpHeaders httpHeaders = new HttpHeaders();
+            httpHeaders.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+            httpHeaders.setAccept(List.of(MediaType.APPLICATION_JSON));
+            httpHeaders.setCacheControl("no-cache");
+
+            if (!StringUtils.isEmpty(config.getOauth2ClientId()) && !StringUtils.isEmpty(config.getOauth2ClientSecret())) {
+                httpHeaders.setBasicAuth(config.getOauth2ClientId(), config.getOauth2ClientSecret());
+            } else {
+                String msg = "Missing BasicAuth credentials to access the OAuth2 issuer";
+                LOGGER.error(msg);
+                throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+            }
+
+            String requestData = "grant_type=client_credentials&scope=" + authScope;
+
+            HttpEntity<String> request = new HttpEntity<>(requestData, httpHeaders);
+
+            ResponseEntity<OAuth2TokenResponse> response = restTemplateForOAuth2Issuer.exchange(
+                    config.getOauth2TokenEndpoint(), HttpMethod.POST, request, OAuth2TokenResponse.class);
+            LOGGER.debug("The OAuth2 issuer returned the status code {}", response.getStatusCode());
+            OAuth2TokenResponse tokenResponse = response.getBody();
+            if (tokenResponse == null || tokenResponse.getAccess_token() == null) {
+                throw new BrokerException(HttpStatus.BAD_GATEWAY, "No access token returned by the OAuth2 issuer for scope " + authScope);
+            }
+
+            telemetryService.oauth2TokenFetched(authScope, trigger, System.nanoTime() - fetchStart);
+            return new CachedToken(tokenResponse, System.currentTimeMillis(), config.getOauth2TokenRefreshAheadRatio(),
+                    config.getOauth2TokenRefreshCheckIntervalInMillis());
+
+        } catch (RuntimeException ex) {
+            telemetryService.oauth2TokenFetchFailed(authScope, trigger, ex, System.nanoTime() - fetchStart);
+            throw ex;
+        }
+    }
+
+    private void evictLeastRecentlyUsedScopesIfFull() {
+        while (scopeToCachedScope.size() > Math.max(1, config.getOauth2TokenCacheMaxSize())) {
+            scopeToCachedScope.values().stream()
+                    .min(Comparator.comparingLong(cachedScope -> cachedScope.lastAccessTime))
+                    .ifPresent(cachedScope -> {
+                        LOGGER.debug("OAuth2 token for scope {} evicted from the cache since the cache is full", cachedScope.scope);
+                        scopeToCachedScope.remove(cachedScope.scope, cachedScope);
+                    });
+        }
+        sizeGauge.set(scopeToCachedScope.size());
+    }
+
+    private static class CachedScope {
+        final String scope;
+        final AtomicReference<CompletableFuture<CachedToken>> fetchInProgress = new AtomicReference<>();
+        volatile CachedToken token;     // null until the first fetch succeeds
+        volatile long lastAccessTime;
+
+        CachedScope(String scope, long lastAccessTime) {
+            this.scope = scope;
+            this.lastAccessTime = lastAccessTime;
+        }
+    }
+
+    // Immutable
+    private static class CachedToken {
+        final String accessToken;
+        final long expirationTime;
+        final long refreshTime;
+
+        CachedToken(OAuth2TokenResponse tokenResponse, long issueTime, double refreshAheadRatio, long refreshCheckIntervalInMillis) {
+            long lifetimeInMillis = TimeUnit.SECONDS.toMillis(tokenResponse.getExpires_in());
+            this.accessToken = tokenResponse.getAccess_token();
+            this.expirationTime = issueTime + lifetimeInMillis;
+            // The refresh must happen before the token stops being used (the refresh task may run up to
+            // refreshCheckIntervalInMillis later)
+            long latestRefreshDelay = lifetimeInMillis - EXPIRATION_SAFETY_MARGIN_IN_MILLIS - refreshCheckIntervalInMillis;
+            this.refreshTime = issueTime + Math.max(0, Math.min((long) (lifetimeInMillis * refreshAheadRatio), latestRefreshDelay));
+        }
+
+        boolean isValidAt(long time) {
+            return time + EXPIRATION_SAFETY_MARGIN_IN_MILLIS < expirationTime;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    private static class OAuth2TokenResponse {
+        String token_type;
+        long expires_in;
+        String access_token;
+        String scope;
+    }
+}
@@ -1,5 +1,10 @@
 package fr.volkaert.event_broker.standard_subscription_adapter;
 
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,11 +15,13 @@ import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class })
 @ComponentScan("fr.volkaert")  // Required because some components/services are not in the same project !
@@ -23,20 +30,55 @@ public class SubscriptionAdapterApplication {
     @Autowired
     BrokerConfig config;
 
+    @Autowired
+    TelemetryService telemetryService;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionAdapterApplication.class);
 
     public static void main(String[] args) {
         SpringApplication.run(SubscriptionAdapterApplication.class, args);
     }
 
+    // Pooled HTTP client for the webhooks: the connections are kept alive and reused (see WebhookConnectionManager)
+    @Bean
+    @Qualifier("HttpClientForWebhooks")
+    public CloseableHttpClient httpClientForWebhooks() {
+        LOGGER.info("Connection pool for webhooks: maxConnectionsPerHost={}, maxConnections={}, idleTimeoutInSeconds={}, maxKeepAliveInSeconds={}",
+                config.getMaxConnectionsPerHostForWebhooks(), config.getMaxConnectionsForWebhooks(),
+                config.getIdleTimeoutInSecondsForWebhooks(), config.getMaxKeepAliveInSecondsForWebhooks());
+        WebhookConnectionManager connectionManager = new WebhookConnectionManager(
+                config.getMaxConnectionsPerHostForWebhooks(), config.getMaxConnectionsForWebhooks(), telemetryService);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(config.getConnectTimeoutInSecondsForWebhooks()))
+                .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(config.getReadTimeoutInSecondsForWebhooks()))
+                .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(config.getConnectionRequestTimeoutInSecondsForWebhooks()))
+                .build();
+        long maxKeepAliveInMillis = TimeUnit.SECONDS.toMillis(config.getMaxKeepAliveInSecondsForWebhooks());
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // The keep-alive duration returned by the webhook (if any) is capped by maxKeepAliveInSeconds
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAliveInMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAliveInMillis > 0 ? Math.min(keepAliveInMillis, maxKeepAliveInMillis) : maxKeepAliveInMillis;
+                })
+                // The connections are reused whatever their state (no client certificate or NTLM for the webhooks)
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getIdleTimeoutInSecondsForWebhooks(), TimeUnit.SECONDS)
+                .build();
+    }
+
     @Bean
     @Qualifier("RestTemplateForWebhooks")
-    public RestTemplate restTemplateForWebhooks(RestTemplateBuilder builder) {
-        LOGGER.info("Timeouts for webhooks: connect={}, read={}",
-                config.getConnectTimeoutInSecondsForWebhooks(), config.getReadTimeoutInSecondsForWebhooks());
+    public RestTemplate restTemplateForWebhooks(RestTemplateBuilder builder,
+                                                @Qualifier("HttpClientForWebhooks") CloseableHttpClient httpClientForWebhooks) {
+        LOGGER.info("Timeouts for webhooks: connect={}, read={}, connectionRequest={}",
+                config.getConnectTimeoutInSecondsForWebhooks(), config.getReadTimeoutInSecondsForWebhooks(),
+                config.getConnectionRequestTimeoutInSecondsForWebhooks());
+        // The timeouts are set in the default RequestConfig of the HttpClient
         RestTemplate restTemplate = builder
-            .setConnectTimeout(Duration.ofSeconds(config.getConnectTimeoutInSecondsForWebhooks()))
-            .setReadTimeout(Duration.ofSeconds(config.getReadTimeoutInSecondsForWebhooks()))
+            .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClientForWebhooks))
             .build();
         restTemplate.getMessageConverters().add(0, new StringHttpMessageConverter(StandardCharsets.UTF_8));
         return restTemplate;
@@ -2,6 +2,7 @@ package fr.volkaert.event_broker.standard_subscription_adapter;
 
 import fr.volkaert.event_broker.error.BrokerException;
 import fr.volkaert.event_broker.error.BrokerExceptionResponse;
+import fr.volkaert.event_broker.model.DeliveryResult;
 import fr.volkaert.event_broker.model.InflightEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +14,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("/webhooks")
 public class SubscriptionAdapterController {
@@ -22,11 +27,36 @@ public class SubscriptionAdapterController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionAdapterController.class);
 
+    // Only the result of the delivery is returned (not the whole event with its payload and credentials)
     @PostMapping
     public ResponseEntity<Object> callWebhook(@RequestBody InflightEvent inflightEvent) {
         try {
+            long deliveryStart = System.nanoTime();
             InflightEvent returnedInflightEvent = service.callWebhook(inflightEvent);
-            return new ResponseEntity<Object>(returnedInflightEvent, HttpStatus.OK);
+            Long deliveryDurationInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deliveryStart);
+            return new ResponseEntity<Object>(DeliveryResult.from(returnedInflightEvent, deliveryDurationInMillis), HttpStatus.OK);
+        } catch (BrokerException ex) {
+            // If error is a BrokerException, the error should already have been logged
+            //LOGGER.error(ex.getMessage(), ex);
+            return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), ex.getHttpStatus());
+        } catch (Exception ex) {
+            LOGGER.error(ex.getMessage(), ex);
+            return new ResponseEntity<Object>(new BrokerExceptionResponse(ex), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Batch delivery (see Subscription.deliveryBatchMaxSize): the results are returned in the same order as the events,
+    // each one with the HTTP status code of its delivery
+    @PostMapping("/batch")
+    public ResponseEntity<Object> callWebhookWithBatch(@RequestBody List<InflightEvent> inflightEvents) {
+        try {
+            long deliveryStart = System.nanoTime();
+            List<InflightEvent> returnedInflightEvents = service.callWebhookWithBatch(inflightEvents);
+            Long deliveryDurationInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deliveryStart);
+            List<DeliveryResult> deliveryResults = returnedInflightEvents.stream()
+                    .map(returnedInflightEvent -> DeliveryResult.from(returnedInflightEvent, deliveryDurationInMillis))
+                    .collect(Collectors.toList());
+            return new ResponseEntity<Object>(deliveryResults, HttpStatus.OK);
         } catch (BrokerException ex) {
             // If error is a BrokerException, the error should already have been logged
             //LOGGER.error(ex.getMessage(), ex);
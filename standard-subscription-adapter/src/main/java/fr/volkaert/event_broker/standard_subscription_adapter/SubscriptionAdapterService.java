@@ -1,25 +1,27 @@
 package fr.volkaert.event_broker.standard_subscription_adapter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.volkaert.event_broker.error.BrokerException;
 import fr.volkaert.event_broker.model.InflightEvent;
 import fr.volkaert.event_broker.standard_subscription_adapter.model.EventToSubscriber;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import fr.volkaert.event_broker.standard_subscription_adapter.model.WebhookBatchItemStatus;
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Service
 public class SubscriptionAdapterService {
@@ -29,101 +31,40 @@ public class SubscriptionAdapterService {
     RestTemplate restTemplate;
 
     @Autowired
-    @Qualifier("RestTemplateForOAuth2Issuer")
-    RestTemplate restTemplateForOAuth2Issuer;
+    OAuth2TokenCache oauth2TokenCache;
 
     @Autowired
     BrokerConfig config;
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionAdapterService.class);
+    @Autowired
+    ObjectMapper objectMapper;
 
-    public InflightEvent callWebhook(InflightEvent inflightEvent) {
-        LOGGER.debug("Event received. Event is {}.", inflightEvent.cloneWithoutSensitiveData());
+    @Autowired
+    TelemetryService telemetryService;
 
-        HttpHeaders httpHeaders = new HttpHeaders();
+    private final Map<String, WebhookBulkhead> webhookHostToBulkhead = new ConcurrentHashMap<>();
+    private final Map<String, WebhookRequestTemplate> subscriptionCodeToWebhookRequestTemplate = new ConcurrentHashMap<>();
 
-        String authMethod = inflightEvent.getAuthMethod() != null ? inflightEvent.getAuthMethod().trim() : "basicauth";
-        if (authMethod.equalsIgnoreCase("basicauth")) {
-            if (!StringUtils.isEmpty(inflightEvent.getAuthClientId()) && !StringUtils.isEmpty(inflightEvent.getAuthClientSecret())) {
-                httpHeaders.setBasicAuth(inflightEvent.getAuthClientId(), inflightEvent.getAuthClientSecret());
-            }
-            else {
-                String msg = String.format("Missing BasicAuth credentials for subscriptionCode %s. Event is %s.",
-                        inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
-                LOGGER.error(msg);
-                throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
-            }
-        }
-        else if (authMethod.equalsIgnoreCase("oauth2")) {
-            if (!StringUtils.isEmpty(inflightEvent.getAuthScope())) {
-                try {
-                    String accessToken = getOAuth2AccessToken(inflightEvent.getAuthScope());
-                    httpHeaders.setBearerAuth(accessToken);
-                } catch (Exception ex) {
-                    String msg = String.format("Error while getting OAuth2 access token with scope %s for subscriptionCode %s. Event is %s.",
-                            inflightEvent.getAuthScope(), inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
-                    LOGGER.error(msg, ex);
-                    throw new BrokerException(HttpStatus.UNAUTHORIZED, msg, ex);
-                }
-            }
-            else {
-                String msg = String.format("OAuth2 scope is null for subscriptionCode %s. Event is %s.",
-                        inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
-                LOGGER.error(msg);
-                throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
-            }
-        }
-        else {
-            String msg = String.format("Invalid auth method %s for subscriptionCode %s. Event is %s.",
-                    authMethod, inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
-            LOGGER.error(msg);
-            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
-        }
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionAdapterService.class);
 
-        try {
-            httpHeaders.setContentType(MediaType.valueOf(inflightEvent.getWebhookContentType()));
-        } catch (Exception ex) {
-            String msg = String.format("Error while setting Content-Type header %s for subscriptionCode %s. Event is %s.",
-                    inflightEvent.getWebhookContentType(), inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
-            LOGGER.error(msg, ex);
-            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex);
-        }
+    public InflightEvent callWebhook(InflightEvent inflightEvent) {
+        LOGGER.debug("Event received. Event is {}.", inflightEvent.cloneWithoutSensitiveData());
 
-        String webhookHeadersAsString = inflightEvent.getWebhookHeaders();
-        if (webhookHeadersAsString != null && ! webhookHeadersAsString.trim().isEmpty()) {
-            String[] headersAndValuesAsString = webhookHeadersAsString.trim().split(";");
-            for (String headerAndValueAsString : headersAndValuesAsString) {
-                String[] headerAndValue = headerAndValueAsString.trim().split(":");
-                if (headerAndValue.length == 2) {
-                    try {
-                        httpHeaders.set(headerAndValue[0].trim(), headerAndValue[1].trim());
-                    } catch (Exception ex) {
-                        String msg = String.format("Error while setting headers for subscriptionCode %s. Event is %s.",
-                                inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
-                        LOGGER.error(msg, ex);
-                        throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex);
-                    }
-                }
-                else {
-                    String msg = String.format("Error while parsing header %s for subscriptionCode %s. Event is %s.",
-                            headerAndValueAsString, inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
-                    LOGGER.error(msg);
-                    throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
-                }
-            }
-        }
+        WebhookRequestTemplate requestTemplate = getWebhookRequestTemplate(inflightEvent);
+        HttpHeaders httpHeaders = createWebhookHttpHeaders(requestTemplate, inflightEvent);
 
         // charset UTF8 has been defined during the creation of RestTemplate
 
         EventToSubscriber eventToSubscriber = EventToSubscriber.from(inflightEvent);
         HttpEntity<EventToSubscriber> request = new HttpEntity<>(eventToSubscriber, httpHeaders);
 
+        WebhookBulkhead bulkhead = enterWebhookBulkheadOrReject(requestTemplate.webhookHost, inflightEvent.getSubscriptionCode());
         try {
 
             LOGGER.debug("Calling the webhook at {}. Event is {}.",
                     inflightEvent.getWebhookUrl(), eventToSubscriber.cloneWithoutSensitiveData());
             ResponseEntity<Void> response = restTemplate.exchange(
-                    inflightEvent.getWebhookUrl(), HttpMethod.POST, request, Void.class);
+                    requestTemplate.webhookUri, HttpMethod.POST, request, Void.class);
             LOGGER.debug("The Webhook returned the http status code {}. Event is {}.",
                     response.getStatusCode(), inflightEvent.toShortLog());
 
@@ -152,7 +93,11 @@ public class SubscriptionAdapterService {
             return inflightEvent;
 
         } catch (Exception ex) {
-            if (ex.getMessage().contains("Connection refused")) {
+            if (isConnectionPoolTimeout(ex)) {
+                throw rejectDueToConnectionPoolTimeout(requestTemplate.webhookHost, inflightEvent.getSubscriptionCode(), ex);
+            }
+
+            else if (ex.getMessage().contains("Connection refused")) {
                 String msg = String.format("Connection Refused error while calling the webhook at %s. Event is %s.",
                         inflightEvent.getWebhookUrl(), inflightEvent.toShortLog());
                 LOGGER.error(msg, ex);
@@ -183,77 +128,227 @@ public class SubscriptionAdapterService {
                 LOGGER.debug("Returning the event {}", inflightEvent.cloneWithoutSensitiveData());
                 return inflightEvent;
             }
+        } finally {
+            bulkhead.exit();
         }
     }
 
+    // Calls the webhook once for the whole batch (the body is a JSON array of EventToSubscriber). All the events of a
+    // batch belong to the same subscription. Each returned event gets the HTTP status code of the response, unless the
+    // item statuses are enabled and the webhook returned a status for this event (see WebhookBatchItemStatus).
+    public List<InflightEvent> callWebhookWithBatch(List<InflightEvent> inflightEvents) {
+        if (inflightEvents == null || inflightEvents.isEmpty()) {
+            String msg = "Empty batch of events";
+            LOGGER.error(msg);
+            throw new BrokerException(HttpStatus.BAD_REQUEST, msg);
+        }
+
+        InflightEvent firstInflightEvent = inflightEvents.get(0);
+        String batchShortLog = String.format("{ size: %d, subscriptionCode: %s, firstEvent: %s }",
+                inflightEvents.size(), firstInflightEvent.getSubscriptionCode(), firstInflightEvent.toShortLog());
+        LOGGER.debug("Batch of events received. Batch is {}.", batchShortLog);
+
+        WebhookRequestTemplate requestTemplate = getWebhookRequestTemplate(firstInflightEvent);
+        HttpHeaders httpHeaders = createWebhookHttpHeaders(requestTemplate, firstInflightEvent);
 
-    //********** OAuth2 Management *************************************************************************************
+        // charset UTF8 has been defined during the creation of RestTemplate
+
+        List<EventToSubscriber> eventsToSubscriber = inflightEvents.stream().map(EventToSubscriber::from).collect(Collectors.toList());
+        HttpEntity<List<EventToSubscriber>> request = new HttpEntity<>(eventsToSubscriber, httpHeaders);
+
+        WebhookBulkhead bulkhead = enterWebhookBulkheadOrReject(requestTemplate.webhookHost, firstInflightEvent.getSubscriptionCode());
+        try {
 
-    private final Map<String, OAuth2TokenResponseWithExpirationDate> oauth2TokenResponseWithExpirationDateCache = new ConcurrentHashMap<>();
+            LOGGER.debug("Calling the webhook at {} with a batch. Batch is {}.", firstInflightEvent.getWebhookUrl(), batchShortLog);
+            ResponseEntity<String> response = restTemplate.exchange(
+                    requestTemplate.webhookUri, HttpMethod.POST, request, String.class);
+            LOGGER.debug("The Webhook returned the http status code {}. Batch is {}.", response.getStatusCode(), batchShortLog);
 
-    // This method is marked as synchronized for safety reason
-    private synchronized String getOAuth2AccessToken(String authScope) {
-        String accessToken = null;
-        OAuth2TokenResponseWithExpirationDate tokenResponseWithExpirationDate = oauth2TokenResponseWithExpirationDateCache.get(authScope);
-        if (tokenResponseWithExpirationDate != null) {
-            if (Instant.now().plusSeconds(10).isAfter(tokenResponseWithExpirationDate.getExpirationDate())) {   // 10 second safety margin before expiration
-                // token expired or close to expire
-                oauth2TokenResponseWithExpirationDateCache.remove(authScope);
-                tokenResponseWithExpirationDate = null;
+            Map<String, Integer> itemHttpStatuses = firstInflightEvent.isWebhookBatchItemStatusEnabled() ?
+                    parseWebhookBatchItemStatuses(response.getBody(), batchShortLog) : Map.of();
+            for (InflightEvent inflightEvent : inflightEvents) {
+                setWebhookHttpStatus(inflightEvent, itemHttpStatuses.getOrDefault(inflightEvent.getId(), response.getStatusCodeValue()));
             }
-        }
-        if (tokenResponseWithExpirationDate != null) {
-            accessToken = tokenResponseWithExpirationDate.getTokenResponse().getAccess_token();
-        }
-        else {
-            LOGGER.debug("Calling the OAuth2 issuer at {} to get token for scope {}", config.getOauth2TokenEndpoint(), authScope);
+            return inflightEvents;
 
-            HttpHeaders httpHeaders = new HttpHeaders();
-            httpHeaders.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-            httpHeaders.setAccept(List.of(MediaType.APPLICATION_JSON));
-            httpHeaders.setCacheControl("no-cache");
-
-            if (!StringUtils.isEmpty(config.getOauth2ClientId()) && !StringUtils.isEmpty(config.getOauth2ClientSecret())) {
-                httpHeaders.setBasicAuth(config.getOauth2ClientId(), config.getOauth2ClientSecret());
-            } else {
-                String msg = "Missing BasicAuth credentials to access the OAuth2 issuer";
-                LOGGER.error(msg);
-                throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+        } catch (HttpClientErrorException ex) {
+            String msg = String.format("Client error %s while calling the webhook at %s with a batch. Batch is %s.",
+                    ex.getStatusCode(), firstInflightEvent.getWebhookUrl(), batchShortLog);
+            LOGGER.error(msg, ex);
+
+            inflightEvents.forEach(inflightEvent -> setWebhookHttpStatus(inflightEvent, ex.getStatusCode().value()));
+            return inflightEvents;
+
+        } catch (HttpServerErrorException ex) {
+            String msg = String.format("Server error %s while calling the webhook at %s with a batch. Batch is %s.",
+                    ex.getStatusCode(), firstInflightEvent.getWebhookUrl(), batchShortLog);
+            LOGGER.error(msg, ex);
+
+            inflightEvents.forEach(inflightEvent -> setWebhookHttpStatus(inflightEvent, ex.getStatusCode().value()));
+            return inflightEvents;
+
+        } catch (Exception ex) {
+            if (isConnectionPoolTimeout(ex)) {
+                throw rejectDueToConnectionPoolTimeout(requestTemplate.webhookHost, firstInflightEvent.getSubscriptionCode(), ex);
+            }
+
+            else if (ex.getMessage() != null && ex.getMessage().contains("Connection refused")) {
+                String msg = String.format("Connection Refused error while calling the webhook at %s with a batch. Batch is %s.",
+                        firstInflightEvent.getWebhookUrl(), batchShortLog);
+                LOGGER.error(msg, ex);
+
+                inflightEvents.forEach(inflightEvent -> {
+                    inflightEvent.setWebhookConnectionErrorOccurred(true);
+                    inflightEvent.setWebhookHttpStatus(HttpStatus.BAD_GATEWAY.value());
+                });
+                return inflightEvents;
             }
 
-            String requestData = "grant_type=client_credentials&scope=" + authScope;
+            else if (ex.getMessage() != null && ex.getMessage().contains("Read timed out")) {
+                String msg = String.format("Read Timeout error while calling the webhook at %s with a batch. Batch is %s.",
+                        firstInflightEvent.getWebhookUrl(), batchShortLog);
+                LOGGER.error(msg, ex);
+
+                inflightEvents.forEach(inflightEvent -> {
+                    inflightEvent.setWebhookReadTimeoutErrorOccurred(true);
+                    inflightEvent.setWebhookHttpStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+                });
+                return inflightEvents;
+            }
+
+            else {
+                String msg = String.format("Error while calling the webhook at %s with a batch. Batch is %s.",
+                        firstInflightEvent.getWebhookUrl(), batchShortLog);
+                LOGGER.error(msg, ex);
+
+                inflightEvents.forEach(inflightEvent -> inflightEvent.setWebhookHttpStatus(HttpStatus.INTERNAL_SERVER_ERROR.value()));
+                return inflightEvents;
+            }
+        } finally {
+            bulkhead.exit();
+        }
+    }
 
-            HttpEntity<String> request = new HttpEntity<>(requestData, httpHeaders);
+    // Returns the bulkhead of the webhook host once a slot has been obtained (bulkhead.exit() must be called once the
+    // webhook has been called). If the bulkhead is full, a BrokerException with the TOO_MANY_REQUESTS status is thrown
+    // so the Subscription Manager redelivers the event(s) later without counting it as a webhook error.
+    private WebhookBulkhead enterWebhookBulkheadOrReject(String webhookHost, String subscriptionCode) {
+        WebhookBulkhead bulkhead = webhookHostToBulkhead.computeIfAbsent(webhookHost, x ->
+                new WebhookBulkhead(webhookHost, config.getBulkheadMaxConcurrentCallsPerWebhookHost(),
+                        config.getBulkheadMaxWaitingCallsPerWebhookHost(), config.getBulkheadMaxWaitInMillis(), telemetryService));
+        if (! bulkhead.tryEnter()) {
+            String msg = telemetryService.webhookCallRejectedByBulkhead(webhookHost, bulkhead.getMaxConcurrentCalls(), subscriptionCode);
+            throw new BrokerException(HttpStatus.TOO_MANY_REQUESTS, msg);
+        }
+        return bulkhead;
+    }
 
-            ResponseEntity<OAuth2TokenResponse> response = restTemplateForOAuth2Issuer.exchange(
-                    config.getOauth2TokenEndpoint(), HttpMethod.POST, request, OAuth2TokenResponse.class);
-            LOGGER.debug("The OAuth2 issuer returned the status code {}", response.getStatusCode());
-            OAuth2TokenResponse tokenResponse = response.getBody();
+    // No connection to the webhook host was available in the pool within connectionRequestTimeoutInSecondsForWebhooks,
+    // so the webhook has not been called: as for the bulkhead, the event(s) are redelivered later without counting it
+    // as a webhook error
+    private BrokerException rejectDueToConnectionPoolTimeout(String webhookHost, String subscriptionCode, Exception ex) {
+        String msg = String.format("No connection to the webhook host %s available within %d seconds for subscription %s. The call is rejected.",
+                webhookHost, config.getConnectionRequestTimeoutInSecondsForWebhooks(), subscriptionCode);
+        LOGGER.warn(msg);
+        return new BrokerException(HttpStatus.TOO_MANY_REQUESTS, msg, ex);
+    }
 
-            tokenResponseWithExpirationDate = new OAuth2TokenResponseWithExpirationDate();
-            tokenResponseWithExpirationDate.setTokenResponse(tokenResponse);
-            tokenResponseWithExpirationDate.setExpirationDate(Instant.now().plusSeconds(tokenResponse.getExpires_in()));
-            oauth2TokenResponseWithExpirationDateCache.put(authScope, tokenResponseWithExpirationDate);
+    private static boolean isConnectionPoolTimeout(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof ConnectionPoolTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            accessToken = tokenResponse.getAccess_token();
+    // Returns the HTTP status of each event id, or an empty map if the response does not contain item statuses
+    private Map<String, Integer> parseWebhookBatchItemStatuses(String responseBody, String batchShortLog) {
+        if (responseBody == null || ! responseBody.trim().startsWith("[")) {
+            return Map.of();
         }
+        try {
+            WebhookBatchItemStatus[] itemStatuses = objectMapper.readValue(responseBody, WebhookBatchItemStatus[].class);
+            Map<String, Integer> itemHttpStatuses = new HashMap<>();
+            for (WebhookBatchItemStatus itemStatus : itemStatuses) {
+                if (itemStatus != null && itemStatus.getId() != null && itemStatus.getHttpStatus() > 0) {
+                    itemHttpStatuses.put(itemStatus.getId(), itemStatus.getHttpStatus());
+                }
+            }
+            return itemHttpStatuses;
+        } catch (Exception ex) {
+            LOGGER.warn("Invalid item statuses returned by the webhook (the HTTP status of the response is used for all the events). Batch is {}.",
+                    batchShortLog, ex);
+            return Map.of();
+        }
+    }
 
-        LOGGER.debug("Access token for scope {} is {}", authScope, accessToken);
-        return accessToken;
+    private static void setWebhookHttpStatus(InflightEvent inflightEvent, int httpStatus) {
+        inflightEvent.setWebhookHttpStatus(httpStatus);
+        inflightEvent.setWebhookClient4xxErrorOccurred(httpStatus >= 400 && httpStatus < 500);
+        inflightEvent.setWebhookServer5xxErrorOccurred(httpStatus >= 500);
     }
 
-    @Data
-    @NoArgsConstructor
-    private static class OAuth2TokenResponse {
-        String token_type;
-        long expires_in;
-        String access_token;
-        String scope;
+    // The template of the subscription is compiled again if the webhook attributes of the event have changed (after an
+    // update of the subscription in the catalog). This operation can throw a BrokerException (if the template is invalid)
+    private WebhookRequestTemplate getWebhookRequestTemplate(InflightEvent inflightEvent) {
+        String subscriptionCode = String.valueOf(inflightEvent.getSubscriptionCode());
+        WebhookRequestTemplate requestTemplate = subscriptionCodeToWebhookRequestTemplate.get(subscriptionCode);
+        if (requestTemplate == null || ! requestTemplate.isCompiledFrom(inflightEvent)) {
+            requestTemplate = WebhookRequestTemplate.compile(inflightEvent, restTemplate.getUriTemplateHandler());
+            subscriptionCodeToWebhookRequestTemplate.put(subscriptionCode, requestTemplate);
+            LOGGER.debug("Webhook request template compiled for subscriptionCode {}", subscriptionCode);
+        }
+        requestTemplate.checkValid(inflightEvent);
+        return requestTemplate;
     }
-    @Data
-    @NoArgsConstructor
-    private static class OAuth2TokenResponseWithExpirationDate {
-        OAuth2TokenResponse tokenResponse;
-        Instant expirationDate;
+
+    // Only the OAuth2 bearer token is added to the headers of the template (the headers of the template are returned
+    // as is if the webhook is not secured with OAuth2). This operation can throw a BrokerException.
+    private HttpHeaders createWebhookHttpHeaders(WebhookRequestTemplate requestTemplate, InflightEvent inflightEvent) {
+        if (requestTemplate.oauth2Scope == null) {
+            return requestTemplate.httpHeaders;
+        }
+        try {
+            String accessToken = oauth2TokenCache.getAccessToken(requestTemplate.oauth2Scope);
+            HttpHeaders httpHeaders = new HttpHeaders();
+            httpHeaders.putAll(requestTemplate.httpHeaders);
+            httpHeaders.setBearerAuth(accessToken);
+            return httpHeaders;
+        } catch (Exception ex) {
+            String msg = String.format("Error while getting OAuth2 access token with scope %s for subscriptionCode %s. Event is %s.",
+                    requestTemplate.oauth2Scope, inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+            LOGGER.error(msg, ex);
+            throw new BrokerException(HttpStatus.UNAUTHORIZED, msg, ex);
+        }
+    }
+
+    // Parses the webhook headers of the subscription (format: header1:value1;header2:value2) and sets them in httpHeaders.
+    // Only called when a WebhookRequestTemplate is compiled.
+    // This operation can throw a BrokerException
+    public static void setWebhookHeaders(HttpHeaders httpHeaders, InflightEvent inflightEvent) {
+        String webhookHeadersAsString = inflightEvent.getWebhookHeaders();
+        if (webhookHeadersAsString != null && ! webhookHeadersAsString.trim().isEmpty()) {
+            String[] headersAndValuesAsString = webhookHeadersAsString.trim().split(";");
+            for (String headerAndValueAsString : headersAndValuesAsString) {
+                String[] headerAndValue = headerAndValueAsString.trim().split(":");
+                if (headerAndValue.length == 2) {
+                    try {
+                        httpHeaders.set(headerAndValue[0].trim(), headerAndValue[1].trim());
+                    } catch (Exception ex) {
+                        String msg = String.format("Error while setting headers for subscriptionCode %s. Event is %s.",
+                                inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+                        LOGGER.error(msg, ex);
+                        throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex);
+                    }
+                }
+                else {
+                    String msg = String.format("Error while parsing header %s for subscriptionCode %s. Event is %s.",
+                            headerAndValueAsString, inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+                    LOGGER.error(msg);
+                    throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,95 @@
+package fr.volkaert.event_broker.standard_subscription_adapter;
+
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bulkhead of the calls to a webhook host (see SubscriptionAdapterService.callWebhook): at most maxConcurrentCalls calls
+// to the host at a time, so a slow host cannot use all the request threads of the Subscription Adapter and delay the
+// other hosts. A call over the limit waits up to maxWaitInMillis for a free slot if less than maxWaitingCalls calls
+// are already waiting, otherwise it is rejected right away (the Subscription Manager will redeliver the event later).
+// If maxConcurrentCalls <= 0, the bulkhead is disabled.
+class WebhookBulkhead {
+
+    private final String webhookHost;
+    private final int maxConcurrentCalls;
+    private final int maxWaitingCalls;
+    private final long maxWaitInMillis;
+    private final Semaphore slots;
+    private final AtomicInteger waitingCalls = new AtomicInteger();
+    private final AtomicLong activeCallsGauge;
+    private final AtomicLong waitingCallsGauge;
+
+    WebhookBulkhead(String webhookHost, int maxConcurrentCalls, int maxWaitingCalls, long maxWaitInMillis,
+                    TelemetryService telemetryService) {
+        this.webhookHost = webhookHost;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitingCalls = Math.max(0, maxWaitingCalls);
+        this.maxWaitInMillis = Math.max(0, maxWaitInMillis);
+        this.slots = new Semaphore(Math.max(0, maxConcurrentCalls), true);
+        if (isEnabled()) {
+            this.activeCallsGauge = telemetryService.webhookBulkheadActiveCallsGauge(webhookHost);
+            this.waitingCallsGauge = telemetryService.webhookBulkheadWaitingCallsGauge(webhookHost);
+        } else {
+            this.activeCallsGauge = this.waitingCallsGauge = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return maxConcurrentCalls > 0;
+    }
+
+    String getWebhookHost() {
+        return webhookHost;
+    }
+
+    int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    // Returns false if the call is rejected. If true is returned, exit() must be called once the call is completed.
+    boolean tryEnter() {
+        if (! isEnabled()) {
+            return true;
+        }
+        if (slots.tryAcquire()) {
+            updateActiveCallsGauge();
+            return true;
+        }
+        if (maxWaitingCalls == 0 || maxWaitInMillis == 0) {
+            return false;
+        }
+        if (waitingCalls.incrementAndGet() > maxWaitingCalls) {
+            waitingCalls.decrementAndGet();
+            return false;
+        }
+        waitingCallsGauge.set(waitingCalls.get());
+        try {
+            boolean entered = slots.tryAcquire(maxWaitInMillis, TimeUnit.MILLISECONDS);
+            if (entered) {
+                updateActiveCallsGauge();
+            }
+            return entered;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waitingCallsGauge.set(waitingCalls.decrementAndGet());
+        }
+    }
+
+    void exit() {
+        if (! isEnabled()) {
+            return;
+        }
+        slots.release();
+        updateActiveCallsGauge();
+    }
+
+    private void updateActiveCallsGauge() {
+        activeCallsGauge.set(maxConcurrentCalls - slots.availablePermits());
+    }
+}
@@ -0,0 +1,124 @@
+package fr.volkaert.event_broker.standard_subscription_adapter;
+
+import fr.volkaert.event_broker.telemetry.TelemetryService;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContexts;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pool of the connections to the webhooks (see SubscriptionAdapterApplication.restTemplateForWebhooks).
+// The connections are kept alive and reused for the next calls to the same host, so the TCP and TLS handshakes are done
+// once per connection instead of once per call. All the TLS connections are created with the same SSLContext, so the
+// TLS sessions are cached by the JDK and resumed when a new connection is opened to the same host.
+// The pool gauges and the time spent waiting for a connection are exported through the TelemetryService.
+class WebhookConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final TelemetryService telemetryService;
+    private final AtomicLong leasedGauge;
+    private final AtomicLong availableGauge;
+    private final AtomicLong pendingGauge;
+    private final AtomicLong maxGauge;
+    // Route of each leased connection, so the gauge of its host is also updated when the connection is released
+    private final Map<HttpClientConnection, HttpRoute> leasedConnectionToRoute = new ConcurrentHashMap<>();
+
+    WebhookConnectionManager(int maxConnectionsPerHost, int maxConnections, TelemetryService telemetryService) {
+        super(createSocketFactoryRegistry());
+        setDefaultMaxPerRoute(maxConnectionsPerHost);
+        setMaxTotal(maxConnections);
+        this.telemetryService = telemetryService;
+        this.leasedGauge = telemetryService.webhookConnectionPoolGauge("leased");
+        this.availableGauge = telemetryService.webhookConnectionPoolGauge("available");
+        this.pendingGauge = telemetryService.webhookConnectionPoolGauge("pending");
+        this.maxGauge = telemetryService.webhookConnectionPoolGauge("max");
+        updateGauges(null);
+    }
+
+    private static Registry<ConnectionSocketFactory> createSocketFactoryRegistry() {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(SSLContexts.createSystemDefault()))
+                .build();
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        ConnectionRequest connectionRequest = super.requestConnection(route, state);
+        long requestStart = System.nanoTime();
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                try {
+                    HttpClientConnection connection = connectionRequest.get(timeout, timeUnit);
+                    leasedConnectionToRoute.put(connection, route);
+                    return connection;
+                } finally {
+                    telemetryService.webhookConnectionLeased(getWebhookHost(route), System.nanoTime() - requestStart);
+                    updateGauges(route);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return connectionRequest.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection connection, Object state, long keepAlive, TimeUnit timeUnit) {
+        super.releaseConnection(connection, state, keepAlive, timeUnit);
+        HttpRoute route = leasedConnectionToRoute.remove(connection);
+        if (route != null) {
+            updateGauges(route);
+        } else {    // should never happen...
+            updateGauges(null);
+            getRoutes().forEach(this::updateGauges);
+        }
+    }
+
+    // Called periodically by the idle connection evictor of the HttpClient
+    @Override
+    public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+        super.closeIdleConnections(idleTime, timeUnit);
+        updateGauges(null);
+        getRoutes().forEach(this::updateGauges);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        super.closeExpiredConnections();
+        updateGauges(null);
+    }
+
+    // The gauge of the leased connections of a host is updated when a connection to this host is leased or released, and
+    // when the idle connections are evicted
+    private void updateGauges(HttpRoute route) {
+        PoolStats totalStats = getTotalStats();
+        leasedGauge.set(totalStats.getLeased());
+        availableGauge.set(totalStats.getAvailable());
+        pendingGauge.set(totalStats.getPending());
+        maxGauge.set(totalStats.getMax());
+        if (route != null) {
+            telemetryService.webhookLeasedConnectionsGauge(getWebhookHost(route)).set(getStats(route).getLeased());
+        }
+    }
+
+    private static String getWebhookHost(HttpRoute route) {
+        return route.getTargetHost().toHostString();
+    }
+}
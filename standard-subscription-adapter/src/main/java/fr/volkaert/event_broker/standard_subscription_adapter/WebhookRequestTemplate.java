@@ -0,0 +1,153 @@
+package fr.volkaert.event_broker.standard_subscription_adapter;
+
+import fr.volkaert.event_broker.error.BrokerException;
+import fr.volkaert.event_broker.model.InflightEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriTemplateHandler;
+
+import java.net.URI;
+import java.util.Objects;
+
+// Immutable parts of the webhook requests of a subscription (URL, Content-Type, BasicAuth and custom headers), compiled
+// once from the webhook attributes of an event instead of for each delivery. The template of a subscription is cached
+// by the SubscriptionAdapterService and compiled again when the webhook attributes of the events change (after an
+// update of the subscription in the catalog). An invalid definition is also compiled once: the error is kept in the
+// template and reported for each event, without parsing the definition again.
+final class WebhookRequestTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookRequestTemplate.class);
+
+    // Sources of the template, only used to detect the changes of the subscription
+    private final String webhookUrl;
+    private final String webhookContentType;
+    private final String webhookHeaders;
+    private final String authMethod;
+    private final String authClientId;
+    private final String authClientSecret;
+    private final String authScope;
+
+    final URI webhookUri;
+    final String webhookHost;       // host:port, key of the bulkheads (see WebhookBulkhead)
+    final HttpHeaders httpHeaders;  // read-only, without the OAuth2 bearer token (see oauth2Scope)
+    final String oauth2Scope;       // null if the webhook is not secured with OAuth2
+    private final BrokerException error;   // null if the template is valid
+
+    private WebhookRequestTemplate(InflightEvent inflightEvent, URI webhookUri, HttpHeaders httpHeaders, String oauth2Scope,
+                                   BrokerException error) {
+        this.webhookUrl = inflightEvent.getWebhookUrl();
+        this.webhookContentType = inflightEvent.getWebhookContentType();
+        this.webhookHeaders = inflightEvent.getWebhookHeaders();
+        this.authMethod = inflightEvent.getAuthMethod();
+        this.authClientId = inflightEvent.getAuthClientId();
+        this.authClientSecret = inflightEvent.getAuthClientSecret();
+        this.authScope = inflightEvent.getAuthScope();
+        this.webhookUri = webhookUri;
+        this.webhookHost = webhookUri != null ? getHostAndPort(webhookUri) : null;
+        this.httpHeaders = httpHeaders != null ? HttpHeaders.readOnlyHttpHeaders(httpHeaders) : null;
+        this.oauth2Scope = oauth2Scope;
+        this.error = error;
+    }
+
+    // Never throws an exception (an invalid template is returned if the definition is invalid)
+    static WebhookRequestTemplate compile(InflightEvent inflightEvent, UriTemplateHandler uriTemplateHandler) {
+        try {
+            URI webhookUri = compileWebhookUri(inflightEvent, uriTemplateHandler);
+            HttpHeaders httpHeaders = new HttpHeaders();
+            String oauth2Scope = null;
+
+            String authMethod = inflightEvent.getAuthMethod() != null ? inflightEvent.getAuthMethod().trim() : "basicauth";
+            if (authMethod.equalsIgnoreCase("basicauth")) {
+                if (!StringUtils.isEmpty(inflightEvent.getAuthClientId()) && !StringUtils.isEmpty(inflightEvent.getAuthClientSecret())) {
+                    httpHeaders.setBasicAuth(inflightEvent.getAuthClientId(), inflightEvent.getAuthClientSecret());
+                }
+                else {
+                    String msg = String.format("Missing BasicAuth credentials for subscriptionCode %s. Event is %s.",
+                            inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+                    LOGGER.error(msg);
+                    throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+                }
+            }
+            else if (authMethod.equalsIgnoreCase("oauth2")) {
+                if (!StringUtils.isEmpty(inflightEvent.getAuthScope())) {
+                    oauth2Scope = inflightEvent.getAuthScope();
+                }
+                else {
+                    String msg = String.format("OAuth2 scope is null for subscriptionCode %s. Event is %s.",
+                            inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+                    LOGGER.error(msg);
+                    throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+                }
+            }
+            else {
+                String msg = String.format("Invalid auth method %s for subscriptionCode %s. Event is %s.",
+                        authMethod, inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+                LOGGER.error(msg);
+                throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+            }
+
+            try {
+                httpHeaders.setContentType(MediaType.valueOf(inflightEvent.getWebhookContentType()));
+            } catch (Exception ex) {
+                String msg = String.format("Error while setting Content-Type header %s for subscriptionCode %s. Event is %s.",
+                        inflightEvent.getWebhookContentType(), inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+                LOGGER.error(msg, ex);
+                throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex);
+            }
+
+            SubscriptionAdapterService.setWebhookHeaders(httpHeaders, inflightEvent);
+
+            return new WebhookRequestTemplate(inflightEvent, webhookUri, httpHeaders, oauth2Scope, null);
+
+        } catch (BrokerException ex) {
+            return new WebhookRequestTemplate(inflightEvent, null, null, null, ex);
+        }
+    }
+
+    // The URI is expanded the same way as RestTemplate.exchange(String url, ...) would do
+    private static URI compileWebhookUri(InflightEvent inflightEvent, UriTemplateHandler uriTemplateHandler) {
+        URI webhookUri;
+        try {
+            webhookUri = uriTemplateHandler.expand(inflightEvent.getWebhookUrl());
+        } catch (Exception ex) {
+            String msg = String.format("Invalid webhook URL %s for subscriptionCode %s. Event is %s.",
+                    inflightEvent.getWebhookUrl(), inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+            LOGGER.error(msg, ex);
+            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg, ex);
+        }
+        if (webhookUri.getHost() == null || ! ("http".equalsIgnoreCase(webhookUri.getScheme()) || "https".equalsIgnoreCase(webhookUri.getScheme()))) {
+            String msg = String.format("Invalid webhook URL %s for subscriptionCode %s (an absolute http or https URL is expected). Event is %s.",
+                    inflightEvent.getWebhookUrl(), inflightEvent.getSubscriptionCode(), inflightEvent.toShortLog());
+            LOGGER.error(msg);
+            throw new BrokerException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+        }
+        return webhookUri;
+    }
+
+    private static String getHostAndPort(URI uri) {
+        return uri.getPort() >= 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+    }
+
+    boolean isCompiledFrom(InflightEvent inflightEvent) {
+        return Objects.equals(webhookUrl, inflightEvent.getWebhookUrl()) &&
+                Objects.equals(webhookContentType, inflightEvent.getWebhookContentType()) &&
+                Objects.equals(webhookHeaders, inflightEvent.getWebhookHeaders()) &&
+                Objects.equals(authMethod, inflightEvent.getAuthMethod()) &&
+                Objects.equals(authClientId, inflightEvent.getAuthClientId()) &&
+                Objects.equals(authClientSecret, inflightEvent.getAuthClientSecret()) &&
+                Objects.equals(authScope, inflightEvent.getAuthScope());
+    }
+
+    // This operation can throw a BrokerException (if the template is invalid)
+    void checkValid(InflightEvent inflightEvent) {
+        if (error != null) {
+            String msg = String.format("Invalid webhook definition for subscriptionCode %s (%s). Event is %s.",
+                    inflightEvent.getSubscriptionCode(), error.getMessage(), inflightEvent.toShortLog());
+            throw new BrokerException(error.getHttpStatus(), msg, error);
+        }
+    }
+}
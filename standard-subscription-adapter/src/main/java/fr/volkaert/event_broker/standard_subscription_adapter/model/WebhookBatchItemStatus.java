@@ -0,0 +1,13 @@
+package fr.volkaert.event_broker.standard_subscription_adapter.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Status of one event of a batch, optionally returned by a webhook called with a batch of events (as a JSON array)
+@Data
+@NoArgsConstructor
+public class WebhookBatchItemStatus {
+
+    private String id;          // id of the event
+    private int httpStatus;     // HTTP status code of the delivery of this event
+}
@@ -8,6 +8,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @RestController
@@ -63,4 +64,11 @@ public class TestSubscriber1Controller {
         LOGGER.info(msg);
         return ResponseEntity.ok(msg);
     }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> batch(@RequestBody List<EventToSubscriberWithTestPayload> events, @RequestHeader HttpHeaders httpHeaders) {
+        String msg = "Webhook 'batch' called with " + events.size() + " events " + events + " (headers are " + httpHeaders + ")";
+        LOGGER.info(msg);
+        return ResponseEntity.ok(msg);
+    }
 }